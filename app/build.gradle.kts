@@ -175,6 +175,11 @@ android {
     }
 }
 
+// the benchmarks are skipped unless requested with -Pbenchmark
+tasks.withType<Test> {
+    systemProperty("benchmark", project.hasProperty("benchmark"))
+}
+
 configurations.onEach {
     it.resolutionStrategy {
     }
@@ -247,4 +252,6 @@ dependencies {
     testImplementation("junit:junit:4.13")
     testImplementation("org.mockito:mockito-core:3.3.3")
     testImplementation("com.google.truth:truth:1.0.1")
+    // the time zone rules for the log entries time formatting, provided by the android artifact on the device
+    testImplementation("org.threeten:threetenbp:1.4.4")
 }
\ No newline at end of file
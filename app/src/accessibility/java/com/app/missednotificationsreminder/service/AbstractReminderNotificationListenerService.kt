@@ -2,66 +2,246 @@ package com.app.missednotificationsreminder.service
 
 import android.accessibilityservice.AccessibilityService
 import android.app.Notification
+import android.content.BroadcastReceiver
+import android.content.Context
+import android.content.Intent
+import android.content.IntentFilter
 import android.os.SystemClock
+import android.util.Log
 import android.text.TextUtils
 import android.view.accessibility.AccessibilityEvent
 import android.view.accessibility.AccessibilityNodeInfo
 import androidx.lifecycle.lifecycleScope
 import com.app.missednotificationsreminder.service.data.model.NotificationData
+import com.app.missednotificationsreminder.service.util.DetectionCache
 import com.app.missednotificationsreminder.service.util.NotificationParser
+import com.app.missednotificationsreminder.service.util.ServiceLog
 import com.app.missednotificationsreminder.service.util.StatusBarWindowUtils
-import com.app.missednotificationsreminder.util.coroutines.debounce
+import com.app.missednotificationsreminder.util.coroutines.adaptiveDebounce
 import kotlinx.coroutines.launch
-import timber.log.Timber
 import java.util.*
 
 /**
  * The service to monitor all status bar notifications (compatibility version for Android 4.0-4.2).
  */
 abstract class AbstractReminderNotificationListenerService : AccessibilityService(), ReminderNotificationListenerServiceInterface {
+    /**
+     * The persisted values detected from the system notification layouts and system UI
+     */
+    private val detectionCache by lazy { DetectionCache(applicationContext) }
+
     /**
      * Notification parser used to retrieve notification information
      */
-    private val notificationParser by lazy { NotificationParser(applicationContext) }
+    private val notificationParser by lazy { NotificationParser(applicationContext, detectionCache) }
 
     /**
      * Utilities to work with status bar window
      */
-    private val statusBarWindowUtils by lazy { StatusBarWindowUtils(packageManager) }
+    private val statusBarWindowUtils by lazy { StatusBarWindowUtils(packageManager, detectionCache) }
+
+    /**
+     * The receiver to drop the detected status bar window when system ui changes
+     */
+    private val systemUiChangedReceiver = SystemUiChangedReceiver()
+
+    /**
+     * The reusable set of the tracked notification titles not yet found in the status bar window by
+     * [collectTitles]
+     */
+    private val pendingTitles = HashSet<String>()
 
-    val statusBarContentChangedRemovedNotification: (List<NotificationData>) -> Unit by lazy {
-        debounce<List<NotificationData>>(
-                1000L,
-                lifecycleScope) { notificationData ->
+    /**
+     * The reusable stack of the nodes to visit by [collectTitles]
+     */
+    private val nodesStack = ArrayList<AccessibilityNodeInfo>()
+
+    /**
+     * The source node of the status bar content changes which are not yet checked
+     */
+    private var pendingSource: AccessibilityNodeInfo? = null
+
+    /**
+     * Whether the pending status bar content changes came from the different sources and the whole
+     * window should be checked
+     */
+    private var pendingFullScan = false
+
+    /**
+     * Whether the pending status bar content changes came without the source node
+     */
+    private var pendingNoSource = false
+
+    private val statusBarContentChangedDebounce: (Unit) -> Unit by lazy {
+        adaptiveDebounce<Unit>(
+                MIN_STATUS_BAR_DEBOUNCE_MS,
+                MAX_STATUS_BAR_DEBOUNCE_MS,
+                lifecycleScope) {
+            val notificationData = getRemovedNotifications()
             lifecycleScope.launch {
                 for (data in notificationData) {
                     if (!createDismissNotification || ignoredNotificationsData.contains(data)) {
                         onNotificationRemoved(data)
                     }
                 }
+                onNotificationsChanged()
             }
         }
     }
 
+    /**
+     * The package names of the tracked notifications
+     */
+    private val trackedPackages = HashSet<String>()
+
+    /*
+     * The counters of the received accessibility events
+     */
+    private var eventsSeen = 0L
+    private var eventsRejected = 0L
+    private var eventsHandled = 0L
+
+    /**
+     * The event types the service is currently subscribed to, 0 if not yet configured
+     */
+    private var eventTypes = 0
+
+    /**
+     * The elapsed realtime the [eventTypes] were changed at
+     */
+    private var eventTypesChangedAt = 0L
+
+    /**
+     * The number of the window events received while subscribed to all the event types
+     */
+    private var windowEventsCount = 0L
+
+    /**
+     * The total time in milliseconds the service was subscribed to all the event types
+     */
+    private var allEventTypesTime = 0L
+
+    /**
+     * The total time in milliseconds the service was subscribed to the notification events only
+     */
+    private var notificationEventTypesTime = 0L
+
     override fun onCreate() {
         super.onCreate()
+        registerReceiver(systemUiChangedReceiver, IntentFilter().apply {
+            addAction(Intent.ACTION_PACKAGE_CHANGED)
+            addAction(Intent.ACTION_PACKAGE_REPLACED)
+            addAction(Intent.ACTION_PACKAGE_RESTARTED)
+            addDataScheme("package")
+        })
         onReady()
     }
 
+    override fun onDestroy() {
+        super.onDestroy()
+        unregisterReceiver(systemUiChangedReceiver)
+    }
+
+    override fun onServiceConnected() {
+        super.onServiceConnected()
+        eventTypes = 0
+        onNotificationsChanged()
+    }
+
+    /**
+     * Update the state which depends on the tracked notifications
+     */
+    private fun onNotificationsChanged() {
+        trackedPackages.clear()
+        for (data in notificationsData) {
+            trackedPackages.add(data.packageName)
+        }
+        updateEventTypes()
+    }
+
+    /**
+     * Subscribe to the window events only while there are notifications which may be removed, otherwise only the
+     * notification events are needed. Reports the estimated number of the window events saved
+     */
+    private fun updateEventTypes() {
+        val newEventTypes = if (notificationsData.isEmpty()) NOTIFICATION_EVENT_TYPES else ALL_EVENT_TYPES
+        if (newEventTypes == eventTypes) {
+            return
+        }
+        val info = serviceInfo ?: return
+        val time = SystemClock.elapsedRealtime()
+        when (eventTypes) {
+            ALL_EVENT_TYPES -> allEventTypesTime += time - eventTypesChangedAt
+            NOTIFICATION_EVENT_TYPES -> notificationEventTypesTime += time - eventTypesChangedAt
+        }
+        info.eventTypes = newEventTypes
+        serviceInfo = info
+        eventTypes = newEventTypes
+        eventTypesChangedAt = time
+        if (ServiceLog.isLoggable(Log.DEBUG)) {
+            // the window events rate is known only while subscribed to them
+            val rate = if (allEventTypesTime > 0) windowEventsCount * 1000.0 / allEventTypesTime else 0.0
+            ServiceLog.d("updateEventTypes: %1\$s, window events rate %2\$.2f/s, estimated saved events %3\$d",
+                    AccessibilityEvent.eventTypeToString(newEventTypes), rate,
+                    (rate * notificationEventTypesTime / 1000).toLong())
+        }
+    }
+
     override suspend fun actualizeNotificationData() {
         // do nothing
     }
 
     override fun onAccessibilityEvent(accessibilityEvent: AccessibilityEvent) {
-        Timber.d("onAccessibilityEvent: received, windowid: %1\$d; type: %2\$s", accessibilityEvent.windowId, AccessibilityEvent.eventTypeToString(accessibilityEvent.eventType))
+        eventsSeen++
+        if (accessibilityEvent.eventType != AccessibilityEvent.TYPE_NOTIFICATION_STATE_CHANGED &&
+                eventTypes == ALL_EVENT_TYPES) {
+            windowEventsCount++
+        }
+        if (isIrrelevantEvent(accessibilityEvent)) {
+            eventsRejected++
+        } else {
+            eventsHandled++
+            handleAccessibilityEvent(accessibilityEvent)
+        }
+        if (eventsSeen % EVENTS_STATISTICS_INTERVAL == 0L && ServiceLog.isLoggable(Log.DEBUG)) {
+            ServiceLog.d("onAccessibilityEvent: seen %1\$d, rejected %2\$d, handled %3\$d events",
+                    eventsSeen, eventsRejected, eventsHandled)
+            ServiceLog.d("onAccessibilityEvent: avoided %1\$d status bar window scans",
+                    statusBarWindowUtils.avoidedScansCount)
+        }
+    }
+
+    /**
+     * Check whether the event can't affect the tracked notifications. Doesn't allocate
+     *
+     * @param accessibilityEvent
+     * @return true if the event should be ignored
+     */
+    private fun isIrrelevantEvent(accessibilityEvent: AccessibilityEvent): Boolean {
+        val packageName = accessibilityEvent.packageName
+        return when (accessibilityEvent.eventType) {
+            AccessibilityEvent.TYPE_NOTIFICATION_STATE_CHANGED ->
+                packageName == null || accessibilityEvent.parcelableData !is Notification
+            AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED ->
+                // the package name is a String so toString doesn't allocate
+                packageName == null || !trackedPackages.contains(packageName.toString())
+            AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED, AccessibilityEvent.TYPE_VIEW_CLICKED ->
+                trackedPackages.isEmpty() || !TextUtils.equals(StatusBarWindowUtils.SYSTEMUI_PACKAGE_NAME, packageName)
+            else -> true
+        }
+    }
+
+    private fun handleAccessibilityEvent(accessibilityEvent: AccessibilityEvent) {
+        if (ServiceLog.isLoggable(Log.DEBUG)) {
+            ServiceLog.d("onAccessibilityEvent: received, windowid: %1\$d; type: %2\$s", accessibilityEvent.windowId, AccessibilityEvent.eventTypeToString(accessibilityEvent.eventType))
+        }
         when (accessibilityEvent.eventType) {
             AccessibilityEvent.TYPE_NOTIFICATION_STATE_CHANGED -> {
-                Timber.d("onAccessibilityEvent: notification state changed")
-                if (accessibilityEvent.parcelableData != null &&
-                        accessibilityEvent.parcelableData is Notification) {
+                ServiceLog.d("onAccessibilityEvent: notification state changed")
+                if (accessibilityEvent.parcelableData is Notification) {
                     val n = accessibilityEvent.parcelableData as Notification
                     val packageName = accessibilityEvent.packageName.toString()
-                    Timber.d("onAccessibilityEvent: notification posted package: %1\$s; notification: %2\$s", packageName, n)
+                    ServiceLog.d("onAccessibilityEvent: notification posted package: %1\$s; notification: %2\$s", packageName, n)
                     lifecycleScope.launch {
                         // fire event
                         onNotificationPosted(ExtendedNotificationData(
@@ -69,43 +249,45 @@ abstract class AbstractReminderNotificationListenerService : AccessibilityServic
                                 packageName,
                                 SystemClock.elapsedRealtime(),
                                 n.flags))
+                        onNotificationsChanged()
                     }
                 }
             }
             AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED -> {
                 // auto clear notifications for launched application (TYPE_WINDOW_CONTENT_CHANGED not always generated
                 // when app is clicked or cleared)
-                Timber.d("onAccessibilityEvent: window state changed")
+                ServiceLog.d("onAccessibilityEvent: window state changed")
                 if (accessibilityEvent.packageName != null) {
                     val packageName = accessibilityEvent.packageName.toString()
-                    Timber.d("onAccessibilityEvent: window state has been changed for package %1\$s", packageName)
+                    ServiceLog.d("onAccessibilityEvent: window state has been changed for package %1\$s", packageName)
                     removeNotificationsFor(packageName)
                 }
             }
             AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED ->                 // auto clear notifications when cleared from notifications bar (old api, Android < 4.3)
                 if (statusBarWindowUtils.isStatusBarWindowEvent(accessibilityEvent)) {
-                    Timber.d("onAccessibilityEvent: status bar content changed")
-                    statusBarContentChangedRemovedNotification(getRemovedNotifications(accessibilityEvent))
+                    ServiceLog.d("onAccessibilityEvent: status bar content changed")
+                    onStatusBarContentChanged(accessibilityEvent)
                 }
             AccessibilityEvent.TYPE_VIEW_CLICKED -> {
                 // auto clear notifications when clear all notifications button clicked (TYPE_WINDOW_CONTENT_CHANGED not always generated
                 // when this event occurs so need to handle this manually
                 //
                 // also handle notification clicked event
-                Timber.d("onAccessibilityEvent: view clicked")
+                ServiceLog.d("onAccessibilityEvent: view clicked")
                 if (statusBarWindowUtils.isStatusBarWindowEvent(accessibilityEvent)) {
-                    Timber.d("onAccessibilityEvent: status bar content clicked")
+                    ServiceLog.d("onAccessibilityEvent: status bar content clicked")
                     if (statusBarWindowUtils.isClearNotificationsButtonEvent(accessibilityEvent)) {
                         // if clicked image view element with the clear button name content description
                         lifecycleScope.launch {
-                            Timber.d("onAccessibilityEvent: clear notifications button clicked")
+                            ServiceLog.d("onAccessibilityEvent: clear notifications button clicked")
                             for (data in notificationsData) {
                                 onNotificationRemoved(data)
                             }
+                            onNotificationsChanged()
                         }
                     } else {
                         // update notifications if another view is clicked
-                        statusBarContentChangedRemovedNotification(getRemovedNotifications(accessibilityEvent))
+                        onStatusBarContentChanged(accessibilityEvent)
                     }
                 }
             }
@@ -115,21 +297,89 @@ abstract class AbstractReminderNotificationListenerService : AccessibilityServic
     override fun onInterrupt() {}
 
     /**
-     * Get the removed notification information from the node information of the accessibility event
-     * <br></br>
-     * The algorithm is not exact. All the strings are recursively retrieved in the view hierarchy and then
-     * titles are compared with the available notifications
+     * The broadcast receiver for the system ui package changes. System ui recreates its windows when
+     * it is updated or restarted, so the detected status bar window id becomes stale
+     */
+    private inner class SystemUiChangedReceiver : BroadcastReceiver() {
+        override fun onReceive(context: Context, intent: Intent) {
+            if (StatusBarWindowUtils.SYSTEMUI_PACKAGE_NAME == intent.data?.schemeSpecificPart) {
+                ServiceLog.d("onReceive: system ui changed %s", intent.action)
+                statusBarWindowUtils.reset()
+            }
+        }
+    }
+
+    /**
+     * Remember the source of the status bar content change and schedule the removed notifications check. The
+     * check is debounced so the whole burst of changes is checked once
      *
      * @param accessibilityEvent
      */
-    private fun getRemovedNotifications(accessibilityEvent: AccessibilityEvent): List<NotificationData> {
+    private fun onStatusBarContentChanged(accessibilityEvent: AccessibilityEvent) {
+        val source = accessibilityEvent.source
+        val previousSource = pendingSource
+        if (source == null) {
+            pendingNoSource = true
+        } else if (previousSource != null) {
+            if (previousSource != source) {
+                pendingFullScan = true
+            }
+            previousSource.recycle()
+        }
+        if (source != null) {
+            pendingSource = source
+        }
+        statusBarContentChangedDebounce(Unit)
+    }
+
+    /**
+     * Get the removed notifications for the pending status bar content changes
+     * <br></br>
+     * The algorithm is not exact. The strings are retrieved in the view hierarchy and then titles are compared with
+     * the available notifications. The subtree of the changes source is checked first, and the rest of the window only
+     * if some titles are not found there
+     */
+    private fun getRemovedNotifications(): List<NotificationData> {
+        val source = pendingSource
+        val fullScan = pendingFullScan
+        val noSource = pendingNoSource
+        pendingSource = null
+        pendingFullScan = false
+        pendingNoSource = false
         val result: MutableList<NotificationData> = ArrayList()
-        var node = accessibilityEvent.source
-        node = statusBarWindowUtils.getRootNode(node)
-        val titles = node?.let { recursiveGetStrings(it) } ?: emptySet()
+        pendingTitles.clear()
+        for (data in notificationsData) {
+            pendingTitles.add((data as ExtendedNotificationData).id)
+        }
+        if (pendingTitles.isEmpty()) {
+            source?.recycle()
+            return result
+        }
+        if (source != null) {
+            try {
+                var complete = true
+                if (!fullScan && !noSource) {
+                    complete = collectTitles(source, null)
+                }
+                if (complete && pendingTitles.isNotEmpty()) {
+                    val root = statusBarWindowUtils.getRootNode(AccessibilityNodeInfo.obtain(source))
+                    if (fullScan || noSource || root != source) {
+                        // the source subtree is already checked if it is not a full scan
+                        complete = collectTitles(root, if (fullScan || noSource) null else source)
+                    }
+                    root.recycle()
+                }
+                if (!complete) {
+                    // the titles are checked partially, can't say which notifications are removed
+                    return result
+                }
+            } finally {
+                source.recycle()
+            }
+        }
         for (data in notificationsData) {
-            if (!titles.contains((data as ExtendedNotificationData).id)) {
-                Timber.d("updateNotifications: removed %s", data)
+            if (pendingTitles.contains((data as ExtendedNotificationData).id)) {
+                ServiceLog.d("updateNotifications: removed %s", data)
                 // if the title is absent in the view hierarchy remove notification from available notifications
                 result.add(data)
             }
@@ -144,33 +394,54 @@ abstract class AbstractReminderNotificationListenerService : AccessibilityServic
      */
     private fun removeNotificationsFor(packageName: String) {
         lifecycleScope.launch {
-            Timber.d("removeNotificationsFor: %1\$s", packageName)
+            ServiceLog.d("removeNotificationsFor: %1\$s", packageName)
             for (data in notificationsData) {
                 if (TextUtils.equals(packageName, data.packageName)) {
                     onNotificationRemoved(data)
                 }
             }
+            onNotificationsChanged()
         }
     }
 
     /**
-     * Get all the text information from the node view hierarchy
+     * Remove the titles found in the node view hierarchy from the [pendingTitles]. The hierarchy is walked iteratively
+     * until all the titles are found, all the visited nodes except the specified one are recycled
      *
-     * @param node
-     * @return
-     */
-    private fun recursiveGetStrings(node: AccessibilityNodeInfo?): Set<String> {
-        val strings: MutableSet<String> = HashSet()
-        if (node != null) {
-            if (node.text != null) {
-                strings.add(node.text.toString())
-                Timber.d("recursiveGetStrings: %1\$s", node.text.toString())
+     * @param root the root node of the hierarchy
+     * @param skip the node which subtree should be skipped, null to walk the whole hierarchy
+     * @return false if the hierarchy has more than [MAX_VISITED_NODES] nodes and not all of them are checked
+     */
+    private fun collectTitles(root: AccessibilityNodeInfo, skip: AccessibilityNodeInfo?): Boolean {
+        val start = System.nanoTime()
+        nodesStack.add(root)
+        var visited = 0
+        var complete = true
+        while (nodesStack.isNotEmpty()) {
+            val node = nodesStack.removeAt(nodesStack.size - 1)
+            if (complete && ++visited > MAX_VISITED_NODES) {
+                complete = false
             }
-            for (i in 0 until node.childCount) {
-                strings.addAll(recursiveGetStrings(node.getChild(i)))
+            if (complete && pendingTitles.isNotEmpty()) {
+                node.text?.let {
+                    pendingTitles.remove(it.toString())
+                    ServiceLog.v("collectTitles: %1\$s", it)
+                }
+                for (i in 0 until node.childCount) {
+                    node.getChild(i)?.let { child ->
+                        if (child == skip) child.recycle() else nodesStack.add(child)
+                    }
+                }
+            }
+            if (node !== root) {
+                node.recycle()
             }
         }
-        return strings
+        if (ServiceLog.isLoggable(Log.DEBUG)) {
+            ServiceLog.d("collectTitles: visited %1\$d nodes in %2\$d us, complete %3\$b",
+                    visited, (System.nanoTime() - start) / 1000, complete)
+        }
+        return complete
     }
 
     /**
@@ -190,4 +461,36 @@ abstract class AbstractReminderNotificationListenerService : AccessibilityServic
         }
 
     }
-}
\ No newline at end of file
+
+    companion object {
+        /**
+         * The maximum number of the status bar window nodes to visit per event
+         */
+        private const val MAX_VISITED_NODES = 2000
+
+        /*
+         * The bounds of the adaptive status bar content changes debounce
+         */
+        private const val MIN_STATUS_BAR_DEBOUNCE_MS = 250L
+        private const val MAX_STATUS_BAR_DEBOUNCE_MS = 2000L
+
+        /**
+         * The number of the received events between the events statistics reports
+         */
+        private const val EVENTS_STATISTICS_INTERVAL = 1000L
+
+        /**
+         * The event types required to track the posted notifications
+         */
+        private const val NOTIFICATION_EVENT_TYPES = AccessibilityEvent.TYPE_NOTIFICATION_STATE_CHANGED
+
+        /**
+         * The event types required to track both the posted and removed notifications, should match the service
+         * configuration
+         */
+        private const val ALL_EVENT_TYPES = AccessibilityEvent.TYPE_NOTIFICATION_STATE_CHANGED or
+                AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED or
+                AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED or
+                AccessibilityEvent.TYPE_VIEW_CLICKED
+    }
+}
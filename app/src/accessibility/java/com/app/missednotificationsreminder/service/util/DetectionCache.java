@@ -0,0 +1,82 @@
+package com.app.missednotificationsreminder.service.util;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.text.TextUtils;
+
+/**
+ * The persistent storage for the values detected from the system UI and the notification layouts
+ * such as notification view ids and the clear all button content description. The values depend
+ * only on the system build, so they are stored together with the build fingerprint and SDK level
+ * and dropped when the system is updated.
+ */
+public class DetectionCache {
+    /**
+     * The name of the preferences file to store detected values in
+     */
+    private static final String PREFERENCES_NAME = "detection_cache";
+    /**
+     * The key of the build the stored values were detected for
+     */
+    private static final String BUILD_KEY = "build";
+    /**
+     * The preferences to store detected values in
+     */
+    private final SharedPreferences mPreferences;
+
+    /**
+     * Construct detection cache. Clears the stored values if they were detected for another build
+     *
+     * @param context the application context
+     */
+    public DetectionCache(Context context) {
+        mPreferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        String build = Build.FINGERPRINT + "/" + Build.VERSION.SDK_INT;
+        if (!TextUtils.equals(build, mPreferences.getString(BUILD_KEY, null))) {
+            ServiceLog.d("DetectionCache: build changed to %1$s, clearing detected values", build);
+            mPreferences.edit()
+                    .clear()
+                    .putString(BUILD_KEY, build)
+                    .apply();
+        }
+    }
+
+    /**
+     * Check whether the value is stored
+     *
+     * @param key the value key
+     * @return true if the value was detected for the current build
+     */
+    public boolean contains(String key) {
+        return mPreferences.contains(key);
+    }
+
+    /**
+     * Get the stored int value
+     *
+     * @param key          the value key
+     * @param defaultValue the value to return if nothing is stored
+     * @return the stored value or the default one
+     */
+    public int getInt(String key, int defaultValue) {
+        return mPreferences.getInt(key, defaultValue);
+    }
+
+    /**
+     * Get the stored string value
+     *
+     * @param key the value key
+     * @return the stored value or null
+     */
+    public String getString(String key) {
+        return mPreferences.getString(key, null);
+    }
+
+    /**
+     * Get the editor to store detected values with
+     */
+    public SharedPreferences.Editor edit() {
+        return mPreferences.edit();
+    }
+}
@@ -5,10 +5,12 @@ import android.app.Notification;
 import android.content.Context;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Debug;
 import android.os.Parcel;
 import android.os.Parcelable;
 import androidx.core.app.NotificationCompat;
 import android.text.TextUtils;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -17,7 +19,8 @@ import android.widget.TextView;
 
 import java.lang.reflect.Field;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import timber.log.Timber;
 
@@ -31,6 +34,34 @@ public class NotificationParser {
     public static final String NOTIFICATION_TITLE_DATA = "1";
     public static final String BIG_NOTIFICATION_TITLE_DATA = "8";
     public static final String INBOX_NOTIFICATION_TITLE_DATA = "9";
+    /**
+     * The tag of the RemoteViews ReflectionAction in the parcel
+     */
+    private static final int REFLECTION_ACTION_TAG = 2;
+    /**
+     * The number of the title view priorities, see {@link #getTitlePriority(int)}
+     */
+    private static final int TITLE_PRIORITIES = 3;
+    /**
+     * The maximum number of the cached notification titles
+     */
+    private static final int TITLES_CACHE_SIZE = 32;
+    /*
+     * The notification extras keys, Notification.EXTRA_TITLE and EXTRA_TEXT are available since API 19
+     */
+    private static final String EXTRA_TITLE = "android.title";
+    private static final String EXTRA_TEXT = "android.text";
+    /*
+     * The detection cache keys of the notification view ids
+     */
+    private static final String NOTIFICATION_TITLE_ID_KEY = "notification_title_id";
+    private static final String BIG_NOTIFICATION_TITLE_ID_KEY = "big_notification_title_id";
+    private static final String INBOX_NOTIFICATION_TITLE_ID_KEY = "inbox_notification_title_id";
+    /**
+     * The RemoteViews mActions field. Resolved on first use, null if it is not available
+     */
+    private static Field sActionsField;
+    private static boolean sActionsFieldResolved;
     /**
      * The id of the notification title view. Initialized in the {@link #detectNotificationIds()} method
      */
@@ -47,22 +78,48 @@ public class NotificationParser {
      * The application context
      */
     Context mContext;
+    /**
+     * The recently discovered titles, repeated events for the same notification are not parsed again
+     */
+    private final Map<TitleKey, CharSequence> mTitlesCache = new LinkedHashMap<TitleKey, CharSequence>(TITLES_CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<TitleKey, CharSequence> eldest) {
+            return size() > TITLES_CACHE_SIZE;
+        }
+    };
+    /**
+     * The reusable key to lookup the titles cache without allocations
+     */
+    private final TitleKey mLookupKey = new TitleKey();
 
     /**
      * Construct notification parser
      *
      * @param context
+     * @param detectionCache the cache to get the previously detected view ids from
      */
-    public NotificationParser(Context context) {
+    public NotificationParser(Context context, DetectionCache detectionCache) {
         mContext = context;
-        detectNotificationIds();
+        if (detectionCache.contains(NOTIFICATION_TITLE_ID_KEY)) {
+            mNotificationTitleId = detectionCache.getInt(NOTIFICATION_TITLE_ID_KEY, 0);
+            mBigNotificationTitleId = detectionCache.getInt(BIG_NOTIFICATION_TITLE_ID_KEY, 0);
+            mInboxNotificationTitleId = detectionCache.getInt(INBOX_NOTIFICATION_TITLE_ID_KEY, 0);
+            ServiceLog.d("NotificationParser: using cached notification ids");
+        } else {
+            detectNotificationIds();
+            detectionCache.edit()
+                    .putInt(NOTIFICATION_TITLE_ID_KEY, mNotificationTitleId)
+                    .putInt(BIG_NOTIFICATION_TITLE_ID_KEY, mBigNotificationTitleId)
+                    .putInt(INBOX_NOTIFICATION_TITLE_ID_KEY, mInboxNotificationTitleId)
+                    .apply();
+        }
     }
 
     /**
      * Detect required view ids which are used to parse notification information
      */
     private void detectNotificationIds() {
-        Timber.d("detectNotificationIds");
+        ServiceLog.d("detectNotificationIds");
         NotificationCompat.Builder mBuilder = new NotificationCompat.Builder(mContext)
                 .setContentTitle(NOTIFICATION_TITLE_DATA);
 
@@ -129,31 +186,70 @@ public class NotificationParser {
         }
     }
 
-    // use reflection to extract string from remoteviews object
-    private HashMap<Integer, CharSequence> getNotificationStringFromRemoteViews(RemoteViews view) {
-        HashMap<Integer, CharSequence> notificationText = new HashMap<>();
+    /**
+     * Get the RemoteViews mActions field
+     *
+     * @return the accessible field or null if it is not available
+     */
+    private static Field getActionsField() {
+        if (!sActionsFieldResolved) {
+            sActionsFieldResolved = true;
+            try {
+                Field field = RemoteViews.class.getDeclaredField("mActions");
+                field.setAccessible(true);
+                sActionsField = field;
+            } catch (Exception exp) {
+                Timber.e(exp, "getActionsField: can't access RemoteViews actions");
+            }
+        }
+        return sActionsField;
+    }
+
+    /**
+     * Get the title priority of the view
+     *
+     * @param viewId the id of the view
+     * @return the title priority where 0 is the highest one, or -1 if the view is not a title view
+     */
+    private int getTitlePriority(int viewId) {
+        if (viewId == mNotificationTitleId) {
+            return 0;
+        } else if (viewId == mBigNotificationTitleId) {
+            return 1;
+        } else if (viewId == mInboxNotificationTitleId) {
+            return 2;
+        }
+        return -1;
+    }
+
+    // use reflection to extract the title strings from remoteviews object
+    private void extractTitlesFromView(RemoteViews view, CharSequence[] titles) {
+        Field actionsField = getActionsField();
+        if (view == null || actionsField == null) {
+            return;
+        }
 
+        // the same parcel is reused for all the actions
+        Parcel parcel = Parcel.obtain();
         try {
-            ArrayList<Parcelable> actions = null;
-            Field fs = RemoteViews.class.getDeclaredField("mActions");
-            if (fs != null) {
-                fs.setAccessible(true);
-                //noinspection unchecked
-                actions = (ArrayList<Parcelable>) fs.get(view);
-            }
+            //noinspection unchecked
+            ArrayList<Parcelable> actions = (ArrayList<Parcelable>) actionsField.get(view);
             if (actions != null) {
-                // Find the setText() and setTime() reflection actions
-                for (Parcelable p : actions) {
-                    Parcel parcel = Parcel.obtain();
-                    p.writeToParcel(parcel, 0);
+                // Find the setText() reflection actions of the title views
+                for (int a = 0, size = actions.size(); a < size; a++) {
+                    parcel.setDataSize(0);
+                    actions.get(a).writeToParcel(parcel, 0);
                     parcel.setDataPosition(0);
 
                     // The tag tells which type of action it is (2 is ReflectionAction, from the source)
                     int tag = parcel.readInt();
-                    if (tag != 2) continue;
+                    if (tag != REFLECTION_ACTION_TAG) continue;
 
                     // View ID
                     int viewId = parcel.readInt();
+                    int priority = getTitlePriority(viewId);
+                    // skip the views which are not titles or already have the title found
+                    if (priority == -1 || titles[priority] != null) continue;
 
                     String methodName = parcel.readString();
                     //noinspection ConstantConditions
@@ -166,67 +262,50 @@ public class NotificationParser {
 
                         // Store the actual string
                         try {
-                            CharSequence t = TextUtils.CHAR_SEQUENCE_CREATOR.createFromParcel(parcel);
-                            notificationText.put(viewId, t);
+                            titles[priority] = TextUtils.CHAR_SEQUENCE_CREATOR.createFromParcel(parcel);
+                            if (priority == 0) {
+                                // the title with the highest priority is found, other texts are not needed
+                                break;
+                            }
                         } catch (Exception exp) {
-                            Timber.d("getNotificationStringFromRemoteViews: Can't get the text for setText with viewid:" + viewId + " parameter type:" + i + " reason:" + exp.getMessage());
+                            ServiceLog.d("extractTitlesFromView: Can't get the text for setText with viewid: %1$d parameter type: %2$d reason: %3$s", viewId, i, exp.getMessage());
                         }
                     }
-
-                    parcel.recycle();
                 }
             }
         } catch (Exception exp) {
             Timber.e(exp, null);
+        } finally {
+            parcel.recycle();
         }
-
-        return notificationText;
     }
 
-    private CharSequence extractTitleFromView(RemoteViews view) {
+    /**
+     * Get the title from the notification views in a single pass. The expanded view is checked
+     * first and the original content view only if it is a different one. The title of the view
+     * with the highest priority wins.
+     */
+    private CharSequence getExpandedTitle(Notification n) {
+        CharSequence[] titles = new CharSequence[TITLE_PRIORITIES];
+        RemoteViews bigContentView = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN ? getBigContentView(n) : null;
+        extractTitlesFromView(bigContentView, titles);
+        if (titles[0] == null && n.contentView != bigContentView) {
+            extractTitlesFromView(n.contentView, titles);
+        }
         CharSequence title = null;
-
-        HashMap<Integer, CharSequence> notificationStrings = getNotificationStringFromRemoteViews(view);
-
-        if (notificationStrings.size() > 0) {
-
-            // get title string if available
-            if (notificationStrings.containsKey(mNotificationTitleId)) {
-                title = notificationStrings.get(mNotificationTitleId);
-            } else if (notificationStrings.containsKey(mBigNotificationTitleId)) {
-                title = notificationStrings.get(mBigNotificationTitleId);
-            } else if (notificationStrings.containsKey(mInboxNotificationTitleId)) {
-                title = notificationStrings.get(mInboxNotificationTitleId);
+        for (CharSequence t : titles) {
+            if (t != null) {
+                title = t;
+                break;
             }
         }
-
+        ServiceLog.d("getExpandedTitle: discovered title %1$s", title);
         return title;
     }
 
     @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
     private RemoteViews getBigContentView(Notification n) {
-        if (n.bigContentView == null)
-            return n.contentView;
-        else {
-            return n.bigContentView;
-        }
-    }
-
-    private CharSequence getExpandedTitle(Notification n) {
-        CharSequence title = null;
-
-        RemoteViews view = n.contentView;
-
-        // first get information from the original content view
-        title = extractTitleFromView(view);
-
-        // then try get information from the expanded view
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
-            view = getBigContentView(n);
-            title = extractTitleFromView(view);
-        }
-        Timber.d("getExpandedTitle: discovered title %1$s", title);
-        return title;
+        return n.bigContentView;
     }
 
     /**
@@ -237,21 +316,109 @@ public class NotificationParser {
      * @return notification title if found. Otherwise returns package name.
      */
     public CharSequence getNotificationTitle(Notification notification, String packageName) {
+        Bundle extras = NotificationCompat.getExtras(notification);
+        CharSequence extrasTitle = extras == null ? null : extras.getCharSequence(EXTRA_TITLE);
+        CharSequence extrasText = extras == null ? null : extras.getCharSequence(EXTRA_TEXT);
+        // notifications without the time can't be told apart and are not cached
+        boolean cacheable = notification.when != 0;
+        if (cacheable) {
+            CharSequence cached = mTitlesCache.get(mLookupKey.set(packageName, notification.when, notification.number,
+                    extrasTitle, extrasText, notification.tickerText));
+            if (cached != null) {
+                ServiceLog.d("getNotificationTitle: cached title %1$s", cached);
+                return cached;
+            }
+        }
+        boolean measure = ServiceLog.isLoggable(Log.VERBOSE);
+        long start = 0;
+        if (measure) {
+            // the allocations are counted process wide, so only while the title is parsed
+            //noinspection deprecation
+            Debug.resetThreadAllocCount();
+            //noinspection deprecation
+            Debug.startAllocCounting();
+            start = System.nanoTime();
+        }
         CharSequence title = null;
-        title = getExpandedTitle(notification);
-        if (title == null) {
-            Bundle extras = NotificationCompat.getExtras(notification);
-            if (extras != null) {
-                Timber.d("getNotificationTitle: has extras: %1$s", extras.toString());
-                title = extras.getCharSequence("android.title");
-                Timber.d("getNotificationTitle: notification has no title, trying to get from bundle. found: %1$s", title);
+        int allocations = 0;
+        try {
+            title = getExpandedTitle(notification);
+            if (title == null) {
+                if (extras != null) {
+                    title = extrasTitle;
+                    ServiceLog.d("getNotificationTitle: notification has no title, trying to get from bundle. found: %1$s", title);
+                }
+            }
+        } finally {
+            if (measure) {
+                //noinspection deprecation
+                Debug.stopAllocCounting();
+                //noinspection deprecation
+                allocations = Debug.getThreadAllocCount();
             }
         }
         if (title == null) {
             // if title was not found, use package name as title
             title = packageName;
         }
-        Timber.d("getNotificationTitle: discovered title %1$s", title);
+        ServiceLog.d("getNotificationTitle: discovered title %1$s", title);
+        if (measure) {
+            ServiceLog.v("getNotificationTitle: parsed in %1$d us with %2$d allocations, success %3$b",
+                    (int) ((System.nanoTime() - start) / 1000), allocations, title != packageName);
+        }
+        if (cacheable) {
+            mTitlesCache.put(new TitleKey().set(packageName, notification.when, notification.number,
+                    extrasTitle, extrasText, notification.tickerText), title);
+        }
         return title;
     }
+
+    /**
+     * The titles cache key which identifies the notification by the package name, time, number and the hash of
+     * its title, text and ticker, so the notification updated without changing the time is parsed again
+     */
+    static final class TitleKey {
+        String packageName;
+        long when;
+        int number;
+        int contentHash;
+
+        TitleKey set(String packageName, long when, int number,
+                     CharSequence title, CharSequence text, CharSequence tickerText) {
+            this.packageName = packageName;
+            this.when = when;
+            this.number = number;
+            this.contentHash = 31 * (31 * hash(title) + hash(text)) + hash(tickerText);
+            return this;
+        }
+
+        /**
+         * Get the hash of the characters without converting the possibly spanned text to string
+         */
+        private static int hash(CharSequence value) {
+            if (value == null) return 0;
+            int result = 1;
+            for (int i = 0, length = value.length(); i < length; i++) {
+                result = 31 * result + value.charAt(i);
+            }
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof TitleKey)) return false;
+            TitleKey other = (TitleKey) o;
+            return when == other.when && number == other.number && contentHash == other.contentHash
+                    && (packageName == null ? other.packageName == null : packageName.equals(other.packageName));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = packageName == null ? 0 : packageName.hashCode();
+            result = 31 * result + (int) (when ^ (when >>> 32));
+            result = 31 * result + number;
+            return 31 * result + contentHash;
+        }
+    }
 }
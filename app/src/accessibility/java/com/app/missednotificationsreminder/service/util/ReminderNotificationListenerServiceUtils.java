@@ -7,7 +7,6 @@ import android.text.TextUtils;
 
 import com.app.missednotificationsreminder.service.ReminderNotificationListenerService;
 
-import timber.log.Timber;
 
 /**
  * Various utility methods related to the {@link ReminderNotificationListenerService}
@@ -40,35 +39,35 @@ public class ReminderNotificationListenerServiceUtils {
         boolean accessibilityFound = false;
         try {
             accessibilityEnabled = Settings.Secure.getInt(context.getContentResolver(), android.provider.Settings.Secure.ACCESSIBILITY_ENABLED);
-            Timber.d("isServiceEnabled: ACCESSIBILITY: " + accessibilityEnabled);
+            ServiceLog.d("isServiceEnabled: ACCESSIBILITY: %1$d", accessibilityEnabled);
         } catch (Settings.SettingNotFoundException e) {
-            Timber.d("isServiceEnabled: Error finding setting, default accessibility to not found: " + e.getMessage());
+            ServiceLog.d("isServiceEnabled: Error finding setting, default accessibility to not found: %1$s", e.getMessage());
         }
 
         TextUtils.SimpleStringSplitter mStringColonSplitter = new TextUtils.SimpleStringSplitter(':');
 
         if (accessibilityEnabled == 1) {
-            Timber.d("isServiceEnabled: ***ACCESSIBILIY IS ENABLED***: ");
+            ServiceLog.d("isServiceEnabled: ***ACCESSIBILIY IS ENABLED***: ");
 
 
             String settingValue = Settings.Secure.getString(context.getContentResolver(), Settings.Secure.ENABLED_ACCESSIBILITY_SERVICES);
-            Timber.d("Setting: " + settingValue);
+            ServiceLog.d("Setting: %1$s", settingValue);
             if (settingValue != null) {
                 TextUtils.SimpleStringSplitter splitter = mStringColonSplitter;
                 splitter.setString(settingValue);
                 while (splitter.hasNext()) {
                     String accessabilityService = splitter.next();
-                    Timber.d("isServiceEnabled: Setting: " + accessabilityService);
+                    ServiceLog.d("isServiceEnabled: Setting: %1$s", accessabilityService);
                     if (accessabilityService.equalsIgnoreCase(ACCESSIBILITY_SERVICE_NAME)) {
-                        Timber.d("isServiceEnabled: We've found the correct setting - accessibility is switched on!");
+                        ServiceLog.d("isServiceEnabled: We've found the correct setting - accessibility is switched on!");
                         return true;
                     }
                 }
             }
 
-            Timber.d("isServiceEnabled: ***END***");
+            ServiceLog.d("isServiceEnabled: ***END***");
         } else {
-            Timber.d("isServiceEnabled: ***ACCESSIBILIY IS DISABLED***");
+            ServiceLog.d("isServiceEnabled: ***ACCESSIBILIY IS DISABLED***");
         }
         return accessibilityFound;
     }
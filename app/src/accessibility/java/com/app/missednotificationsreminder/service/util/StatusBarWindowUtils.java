@@ -3,9 +3,13 @@ package com.app.missednotificationsreminder.service.util;
 import android.content.pm.PackageManager;
 import android.content.res.Resources;
 import android.text.TextUtils;
+import android.util.Log;
+import android.util.SparseBooleanArray;
 import android.view.accessibility.AccessibilityEvent;
 import android.view.accessibility.AccessibilityNodeInfo;
 
+import java.util.Locale;
+
 import timber.log.Timber;
 
 /**
@@ -17,11 +21,35 @@ public class StatusBarWindowUtils {
      * The package name used by system ui
      */
     public static final String SYSTEMUI_PACKAGE_NAME = "com.android.systemui";
+    /**
+     * The detection cache key prefix of the clear all button content description. The description
+     * is localized so the key also contains the locale
+     */
+    private static final String CLEAR_BUTTON_NAME_KEY = "clear_button_name_";
+    /**
+     * The minimum number of the scanned nodes to remember the window as not the status bar one. Smaller
+     * trees may belong to the status bar window which content is not yet populated
+     */
+    private static final int MIN_NON_STATUS_BAR_WINDOW_NODES = 10;
     /**
      * The status bar window id used in accessibility events. Initialized and used in the
      * {@linkplain #isStatusBarWindowEvent(AccessibilityEvent) isStatusBarWindowEvent} method
      */
     int mStatusBarWindowId = -1;
+    /**
+     * The ids of the system ui windows found to be not the status bar windows while the status bar
+     * window id is not yet initialized
+     */
+    private final SparseBooleanArray mNonStatusBarWindows = new SparseBooleanArray();
+    /**
+     * The number of the nodes visited by the current {@linkplain #hasClearButton(AccessibilityNodeInfo)
+     * hasClearButton} scan
+     */
+    private int mScannedNodes = 0;
+    /**
+     * The number of the window hierarchy scans avoided by the cached window detection results
+     */
+    private long mAvoidedScans = 0;
     /**
      * The content description for the clear all notifications button. Initialized in the
      * {@linkplain #findClearAllButton() findClearAllButton} method
@@ -36,17 +64,31 @@ public class StatusBarWindowUtils {
      * Construct instance of status bar window utils
      *
      * @param packageManager the package manager
+     * @param detectionCache the cache to get the previously detected button description from
      */
-    public StatusBarWindowUtils(PackageManager packageManager) {
+    public StatusBarWindowUtils(PackageManager packageManager, DetectionCache detectionCache) {
         mPackageManager = packageManager;
-        findClearAllButton();
+        String key = CLEAR_BUTTON_NAME_KEY + Locale.getDefault();
+        if (detectionCache.contains(key)) {
+            // empty value means the button description was not found
+            mClearButtonName = detectionCache.getString(key);
+            if (TextUtils.isEmpty(mClearButtonName)) {
+                mClearButtonName = null;
+            }
+            ServiceLog.d("StatusBarWindowUtils: using cached clear button name %1$s", mClearButtonName);
+        } else {
+            findClearAllButton();
+            detectionCache.edit()
+                    .putString(key, mClearButtonName == null ? "" : mClearButtonName)
+                    .apply();
+        }
     }
 
     /**
      * Find "clear all notifications" button accessibility text used by the systemui application
      */
     private void findClearAllButton() {
-        Timber.d("findClearAllButton: called");
+        ServiceLog.d("findClearAllButton: called");
         Resources res;
         try {
             res = mPackageManager.getResourcesForApplication(SYSTEMUI_PACKAGE_NAME);
@@ -61,40 +103,74 @@ public class StatusBarWindowUtils {
 
     /**
      * Check whether accessibility event belongs to the status bar window by checking event package
-     * name and window id
+     * name and window id. Until the status bar window id is initialized the window hierarchy is scanned
+     * for the clear all button, and the windows with the large enough hierarchy without the button are
+     * remembered so they are not scanned again. The detected values are dropped by {@linkplain #reset()
+     * reset} when system ui changes
      *
      * @param accessibilityEvent
      * @return
      */
     public boolean isStatusBarWindowEvent(AccessibilityEvent accessibilityEvent) {
         boolean result = false;
+        int windowId = accessibilityEvent.getWindowId();
         if (!SYSTEMUI_PACKAGE_NAME.equals(accessibilityEvent.getPackageName())) {
-            Timber.v("isStatusBarWindowEvent: not system ui package");
+            ServiceLog.v("isStatusBarWindowEvent: not system ui package");
         } else if (mStatusBarWindowId != -1) {
             // if status bar window id is already initialized
-            result = accessibilityEvent.getWindowId() == mStatusBarWindowId;
-            Timber.v("isStatusBarWindowEvent: comparing window ids %1$d %2$d, result %3$b", mStatusBarWindowId, accessibilityEvent.getWindowId(), result);
+            result = windowId == mStatusBarWindowId;
+            ServiceLog.v("isStatusBarWindowEvent: comparing window ids %1$d %2$d, result %3$b", mStatusBarWindowId, windowId, result);
+        } else if (mNonStatusBarWindows.get(windowId)) {
+            mAvoidedScans++;
+            ServiceLog.v("isStatusBarWindowEvent: not status bar window %1$d", windowId);
         } else {
-            Timber.v("isStatusBarWindowEvent: status bar window id not initialized, starting detection");
-            AccessibilityNodeInfo node = accessibilityEvent.getSource();
-            node = getRootNode(node);
-
-            if (hasClearButton(node)) {
-                Timber.v("isStatusBarWindowEvent: the root node has clear text button in the view hierarchy. Remember window id for future use");
-                mStatusBarWindowId = accessibilityEvent.getWindowId();
-                result = isStatusBarWindowEvent(accessibilityEvent);
+            ServiceLog.v("isStatusBarWindowEvent: status bar window id not initialized, starting detection");
+            AccessibilityNodeInfo node = getRootNode(accessibilityEvent.getSource());
+            mScannedNodes = 0;
+            result = hasClearButton(node);
+            if (node != null) {
+                node.recycle();
+            }
+            if (result) {
+                ServiceLog.v("isStatusBarWindowEvent: the root node has clear text button in the view hierarchy. Remember window id for future use");
+                mStatusBarWindowId = windowId;
+                // not needed once the status bar window is known
+                mNonStatusBarWindows.clear();
+            } else if (mScannedNodes >= MIN_NON_STATUS_BAR_WINDOW_NODES) {
+                ServiceLog.v("isStatusBarWindowEvent: window %1$d is not the status bar window", windowId);
+                mNonStatusBarWindows.put(windowId, true);
+            } else {
+                ServiceLog.v("isStatusBarWindowEvent: can't initizlie status bar window id");
             }
-            if (!result) {
-                Timber.v("isStatusBarWindowEvent: can't initizlie status bar window id");
+            if (ServiceLog.isLoggable(Log.DEBUG)) {
+                ServiceLog.d("isStatusBarWindowEvent: detected %1$b for window %2$d, avoided scans %3$d",
+                        result, windowId, mAvoidedScans);
             }
         }
         return result;
     }
 
+    /**
+     * Drop the detected window ids. Should be called when system ui is restarted or updated as it
+     * recreates its windows
+     */
+    public void reset() {
+        ServiceLog.d("reset: called");
+        mStatusBarWindowId = -1;
+        mNonStatusBarWindows.clear();
+    }
+
+    /**
+     * Get the number of the window hierarchy scans avoided by the cached window detection results
+     */
+    public long getAvoidedScansCount() {
+        return mAvoidedScans;
+    }
+
     /**
      * Get the root node for the specified node if it is not null
      *
-     * @param node
+     * @param node the node, recycled if it is not the root one
      * @return the root node for the specified node in the view hierarchy
      */
     public AccessibilityNodeInfo getRootNode(AccessibilityNodeInfo node) {
@@ -103,6 +179,7 @@ public class StatusBarWindowUtils {
             // as second call may return null
             AccessibilityNodeInfo parent;
             while ((parent = node.getParent()) != null) {
+                node.recycle();
                 node = parent;
             }
         }
@@ -112,7 +189,7 @@ public class StatusBarWindowUtils {
     /**
      * Check whether the node has clear notifications button in the view hierarchy
      *
-     * @param node
+     * @param node the node, not recycled. Obtained descendants are recycled
      * @return
      */
     private boolean hasClearButton(AccessibilityNodeInfo node) {
@@ -120,14 +197,18 @@ public class StatusBarWindowUtils {
         if (node == null) {
             return result;
         }
-        Timber.d("hasClearButton: %1$s %2$d %3$s", node.getClassName(), node.getWindowId(), node.getContentDescription());
+        mScannedNodes++;
+        if (ServiceLog.isLoggable(Log.DEBUG)) {
+            ServiceLog.d("hasClearButton: %1$s %2$d %3$s", node.getClassName(), node.getWindowId(), node.getContentDescription());
+        }
         if (TextUtils.equals(mClearButtonName, node.getContentDescription())) {
             result = true;
         } else {
-            for (int i = 0; i < node.getChildCount(); i++) {
-                if (hasClearButton(node.getChild(i))) {
-                    result = true;
-                    break;
+            for (int i = 0; i < node.getChildCount() && !result; i++) {
+                AccessibilityNodeInfo child = node.getChild(i);
+                result = hasClearButton(child);
+                if (child != null) {
+                    child.recycle();
                 }
             }
         }
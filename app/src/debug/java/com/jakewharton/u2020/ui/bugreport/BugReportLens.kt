@@ -1,12 +1,14 @@
 package com.jakewharton.u2020.ui.bugreport
 
 import android.app.Activity
+import android.content.Intent
 import android.net.Uri
 import android.os.Build
 import android.util.DisplayMetrics
 import android.widget.Toast
 import androidx.core.app.ShareCompat.IntentBuilder
 import com.app.missednotificationsreminder.BuildConfig
+import com.app.missednotificationsreminder.util.ShareUtils
 import com.jakewharton.u2020.data.LumberYard
 import com.jakewharton.u2020.ui.bugreport.BugReportDialog.ReportListener
 import com.jakewharton.u2020.util.Intents
@@ -85,9 +87,11 @@ class BugReportLens(private val context: Activity, private val lumberYard: Lumbe
             intent.addStream(Uri.fromFile(screenshot))
         }
         if (logs != null) {
-            intent.addStream(Uri.fromFile(logs))
+            // the compressed logs are shared through the file provider as file URIs are not
+            // allowed to be exposed on newer Android versions
+            intent.addStream(ShareUtils.getAppFileProviderUri(logs, context))
         }
-        Intents.maybeStartActivity(context, intent.intent)
+        Intents.maybeStartActivity(context, intent.intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION))
     }
 
     companion object {
@@ -17,6 +17,7 @@ import com.app.missednotificationsreminder.BuildConfig;
 import com.app.missednotificationsreminder.R;
 import com.app.missednotificationsreminder.databinding.DebugViewContentBinding;
 import com.app.missednotificationsreminder.di.Injector;
+import com.app.missednotificationsreminder.settings.applicationselection.data.model.util.ApplicationIconMemoryCache;
 import com.jakewharton.u2020.data.AnimationSpeed;
 import com.jakewharton.u2020.data.LumberYard;
 import com.jakewharton.u2020.data.PicassoDebugging;
@@ -54,6 +55,7 @@ public final class DebugView extends FrameLayout implements LifecycleOwner {
     LifecycleRegistry lifecycleRegistry = new LifecycleRegistry(this);
     DebugViewContentBinding mBinding;
     @Inject Picasso picasso;
+    @Inject ApplicationIconMemoryCache iconMemoryCache;
     @Inject LumberYard lumberYard;
     @Inject @AnimationSpeed Preference<Integer> animationSpeed;
     @Inject @PicassoDebugging Preference<Boolean> picassoDebugging;
@@ -180,6 +182,10 @@ public final class DebugView extends FrameLayout implements LifecycleOwner {
         mBinding.debugPicassoCacheSize.setText(size + " / " + total + " (" + percentage + "%)");
         mBinding.debugPicassoCacheHit.setText(String.valueOf(snapshot.cacheHits));
         mBinding.debugPicassoCacheMiss.setText(String.valueOf(snapshot.cacheMisses));
+        int requests = iconMemoryCache.getHitCount() + iconMemoryCache.getMissCount();
+        int hitRate = requests == 0 ? 0 : (int) ((1f * iconMemoryCache.getHitCount() / requests) * 100);
+        mBinding.debugPicassoCacheHitRate.setText(hitRate + "%");
+        mBinding.debugPicassoCacheEvictions.setText(String.valueOf(iconMemoryCache.getEvictionCount()));
         mBinding.debugPicassoDecoded.setText(String.valueOf(snapshot.originalBitmapCount));
         mBinding.debugPicassoDecodedTotal.setText(getSizeString(snapshot.totalOriginalBitmapSize));
         mBinding.debugPicassoDecodedAvg.setText(getSizeString(snapshot.averageOriginalBitmapSize));
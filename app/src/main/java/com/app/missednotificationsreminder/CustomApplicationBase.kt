@@ -4,6 +4,8 @@ import android.content.Context
 import android.util.Log
 import androidx.multidex.MultiDex
 import androidx.work.Configuration
+import com.app.missednotificationsreminder.service.util.ServiceLog
+import com.app.missednotificationsreminder.settings.applicationselection.data.source.ApplicationsCatalogDataSource
 import com.app.missednotificationsreminder.ui.ActivityHierarchyServer
 import com.app.missednotificationsreminder.ui.activity.common.CommonActivityLifecycleCallback
 import com.jakewharton.threetenabp.AndroidThreeTen
@@ -25,6 +27,9 @@ abstract class CustomApplicationBase : DaggerApplication(), Configuration.Provid
     @Inject
     lateinit var lumberYard: LumberYard
 
+    @Inject
+    lateinit var applicationsCatalog: ApplicationsCatalogDataSource
+
     override fun attachBaseContext(base: Context) {
         super.attachBaseContext(base)
         MultiDex.install(this)
@@ -38,9 +43,11 @@ abstract class CustomApplicationBase : DaggerApplication(), Configuration.Provid
         } else {
             Timber.plant(CrashReportingTree())
         }
+        ServiceLog.minLevel = if (BuildConfig.DEBUG) Log.VERBOSE else Log.INFO
         lumberYard.cleanUp()
         Timber.plant(lumberYard.tree())
         AndroidThreeTen.init(this)
+        applicationsCatalog.monitorPackageChanges()
         registerActivityLifecycleCallbacks(activityHierarchyServer)
         registerActivityLifecycleCallbacks(CommonActivityLifecycleCallback())
     }
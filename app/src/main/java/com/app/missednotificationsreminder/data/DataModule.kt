@@ -15,6 +15,7 @@ import com.app.missednotificationsreminder.service.data.model.NotificationData
 import com.app.missednotificationsreminder.service.event.NotificationsUpdatedEvent
 import com.app.missednotificationsreminder.service.event.RemindEvents
 import com.app.missednotificationsreminder.settings.applicationselection.data.model.util.ApplicationIconHandler
+import com.app.missednotificationsreminder.settings.applicationselection.data.model.util.ApplicationIconMemoryCache
 import com.app.missednotificationsreminder.util.event.Event
 import com.app.missednotificationsreminder.util.event.FlowEventBus
 import com.squareup.picasso.Picasso
@@ -27,6 +28,7 @@ import kotlinx.coroutines.ExperimentalCoroutinesApi
 import kotlinx.coroutines.FlowPreview
 import kotlinx.coroutines.flow.*
 import timber.log.Timber
+import java.io.File
 import javax.inject.Singleton
 
 /**
@@ -273,9 +275,20 @@ class DataModule {
 
     @Provides
     @Singleton
-    fun providePicasso(app: Application, packageManager: PackageManager): Picasso {
+    fun provideApplicationIconMemoryCache(app: Application): ApplicationIconMemoryCache {
+        val iconSize = app.resources.getDimensionPixelSize(R.dimen.application_icon_size)
+        // ARGB_8888 icons use 4 bytes per pixel
+        return ApplicationIconMemoryCache(ICON_MEMORY_CACHE_SIZE * iconSize * iconSize * 4)
+    }
+
+    @Provides
+    @Singleton
+    fun providePicasso(app: Application,
+                       packageManager: PackageManager,
+                       memoryCache: ApplicationIconMemoryCache): Picasso {
         return Picasso.Builder(app)
-                .addRequestHandler(ApplicationIconHandler(packageManager))
+                .memoryCache(memoryCache)
+                .addRequestHandler(ApplicationIconHandler(packageManager, File(app.cacheDir, "app_icons")))
                 .listener { _, uri, e -> Timber.e(e, "Failed to load image: %s", uri) }
                 .build()
     }
@@ -301,6 +314,13 @@ class DataModule {
                 .onEach { data: List<NotificationData> -> Timber.d("notificationDataFlow: %d", data.size) }
                 .debounce(500)
     }
+
+    companion object {
+        /**
+         * The number of application icons the memory cache is sized for, several screens of the applications list
+         */
+        private const val ICON_MEMORY_CACHE_SIZE = 120
+    }
 }
 
 @Module
@@ -0,0 +1,158 @@
+package com.app.missednotificationsreminder.data.model
+
+/**
+ * The bitset of the [PackageIdTable] ids. Membership tests, toggles and counting are performed on the long words
+ * directly without any allocations unless the set needs to grow to fit a larger id.
+ */
+class PackageIdSet(capacity: Int = 0) {
+    private var words = LongArray(wordIndex(capacity - 1) + 1)
+
+    /**
+     * The number of ids in the set
+     */
+    val size: Int
+        get() {
+            var result = 0
+            for (word in words) {
+                result += java.lang.Long.bitCount(word)
+            }
+            return result
+        }
+
+    /**
+     * Whether the set has no ids
+     */
+    val isEmpty: Boolean
+        get() {
+            for (word in words) {
+                if (word != 0L) return false
+            }
+            return true
+        }
+
+    operator fun contains(id: Int): Boolean {
+        if (id < 0) return false
+        val wordIndex = wordIndex(id)
+        return wordIndex < words.size && words[wordIndex] and bit(id) != 0L
+    }
+
+    /**
+     * Add or remove the id depend on the value parameter
+     *
+     * @param id    the package id
+     * @param value whether the id should be present in the set
+     * @return true if the set has been changed
+     */
+    fun set(id: Int, value: Boolean): Boolean {
+        return if (value) add(id) else remove(id)
+    }
+
+    fun add(id: Int): Boolean {
+        val wordIndex = wordIndex(id)
+        if (wordIndex >= words.size) {
+            words = words.copyOf(maxOf(wordIndex + 1, words.size * 2))
+        }
+        val previous = words[wordIndex]
+        words[wordIndex] = previous or bit(id)
+        return previous != words[wordIndex]
+    }
+
+    fun remove(id: Int): Boolean {
+        val wordIndex = wordIndex(id)
+        if (id < 0 || wordIndex >= words.size) return false
+        val previous = words[wordIndex]
+        words[wordIndex] = previous and bit(id).inv()
+        return previous != words[wordIndex]
+    }
+
+    fun clear() {
+        words.fill(0L)
+    }
+
+    /**
+     * Call the action for each id present in the set in ascending order
+     */
+    inline fun forEach(action: (Int) -> Unit) {
+        var id = nextSetBit(0)
+        while (id >= 0) {
+            action(id)
+            id = nextSetBit(id + 1)
+        }
+    }
+
+    /**
+     * Get the first id present in the set which is greater or equal to the from index
+     *
+     * @param fromIndex the id to start search from
+     * @return the found id or -1 if there are no more ids
+     */
+    fun nextSetBit(fromIndex: Int): Int {
+        var wordIndex = wordIndex(fromIndex)
+        if (wordIndex >= words.size) return -1
+        var word = words[wordIndex] and (-1L shl fromIndex)
+        while (true) {
+            if (word != 0L) {
+                return wordIndex * Long.SIZE_BITS + java.lang.Long.numberOfTrailingZeros(word)
+            }
+            if (++wordIndex == words.size) return -1
+            word = words[wordIndex]
+        }
+    }
+
+    fun copy(): PackageIdSet {
+        return PackageIdSet().also { it.words = words.copyOf() }
+    }
+
+    override fun equals(other: Any?): Boolean {
+        if (this === other) return true
+        if (other !is PackageIdSet) return false
+        val common = minOf(words.size, other.words.size)
+        for (i in 0 until common) {
+            if (words[i] != other.words[i]) return false
+        }
+        for (i in common until words.size) {
+            if (words[i] != 0L) return false
+        }
+        for (i in common until other.words.size) {
+            if (other.words[i] != 0L) return false
+        }
+        return true
+    }
+
+    override fun hashCode(): Int {
+        var result = 0L
+        for (i in words.indices) {
+            result = result xor words[i] * (i + 1)
+        }
+        return (result shr 32 xor result).toInt()
+    }
+
+    override fun toString(): String {
+        return StringBuilder("PackageIdSet{").apply {
+            forEach { id ->
+                if (length > "PackageIdSet{".length) append(", ")
+                append(PackageIdTable.packageNameOf(id) ?: id.toString())
+            }
+            append("}")
+        }.toString()
+    }
+
+    companion object {
+        private fun wordIndex(id: Int) = id shr 6
+
+        private fun bit(id: Int) = 1L shl id
+
+        /**
+         * Create the set with the ids of the specified package names
+         *
+         * @param packageNames the package names to intern and add
+         */
+        fun of(packageNames: Collection<String>): PackageIdSet {
+            return PackageIdSet(PackageIdTable.size).apply {
+                for (packageName in packageNames) {
+                    add(PackageIdTable.idOf(packageName))
+                }
+            }
+        }
+    }
+}
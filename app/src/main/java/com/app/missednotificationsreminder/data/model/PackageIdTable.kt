@@ -0,0 +1,64 @@
+package com.app.missednotificationsreminder.data.model
+
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * The process wide symbol table which interns application package names to dense integer ids. Ids are assigned
+ * sequentially starting from 0 and never change during the process lifetime, so they may be used as indexes in the
+ * [PackageIdSet] bitsets instead of hashing full package name strings on every check.
+ */
+object PackageIdTable {
+    /**
+     * Package name to id mapping
+     */
+    private val ids = ConcurrentHashMap<String, Int>()
+
+    /**
+     * Id to package name mapping. Only grows, guarded by the table monitor for writes
+     */
+    @Volatile
+    private var names = arrayOfNulls<String>(INITIAL_CAPACITY)
+
+    /**
+     * The number of interned package names
+     */
+    @Volatile
+    var size = 0
+        private set
+
+    /**
+     * Get the id for the specified package name, interning it if it is not yet known
+     *
+     * @param packageName the package name to get the id for
+     * @return the dense id of the package name
+     */
+    fun idOf(packageName: String): Int {
+        return ids[packageName] ?: intern(packageName)
+    }
+
+    /**
+     * Get the package name for the previously interned id
+     *
+     * @param id the package id
+     * @return the package name or null if id is unknown
+     */
+    fun packageNameOf(id: Int): String? {
+        val names = names
+        return if (id in 0 until size && id < names.size) names[id] else null
+    }
+
+    @Synchronized
+    private fun intern(packageName: String): Int {
+        ids[packageName]?.let { return it }
+        val id = size
+        if (id == names.size) {
+            names = names.copyOf(id * 2)
+        }
+        names[id] = packageName
+        ids[packageName] = id
+        size = id + 1
+        return id
+    }
+
+    private const val INITIAL_CAPACITY = 256
+}
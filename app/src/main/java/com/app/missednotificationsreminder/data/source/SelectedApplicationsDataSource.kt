@@ -0,0 +1,80 @@
+package com.app.missednotificationsreminder.data.source
+
+import com.app.missednotificationsreminder.data.model.PackageIdSet
+import com.app.missednotificationsreminder.data.model.PackageIdTable
+import com.app.missednotificationsreminder.di.qualifiers.SelectedApplications
+import com.tfcporciuncula.flow.Preference
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * The data source which holds user selected applications as a [PackageIdSet] bitset backed by the
+ * [SelectedApplications] preference. The bitset is rebuilt only when the preference value is replaced, so
+ * membership checks do not hash package names.
+ *
+ * @property selectedApplicationsPref the persisted selected applications preference
+ */
+@Singleton
+class SelectedApplicationsDataSource @Inject constructor(
+        @param:SelectedApplications private val selectedApplicationsPref: Preference<Set<String>>) {
+    /**
+     * The preference value the current [ids] have been built from
+     */
+    private var source: Set<String>? = null
+
+    private var ids = PackageIdSet()
+
+    /**
+     * The number of selected applications
+     */
+    val count: Int
+        @Synchronized get() = actualIds().size
+
+    /**
+     * Check whether the application with the specified package id is selected
+     *
+     * @param packageId the [PackageIdTable] id of the application package
+     */
+    @Synchronized
+    fun isSelected(packageId: Int): Boolean {
+        return actualIds().contains(packageId)
+    }
+
+    /**
+     * Check whether the application with the specified package name is selected
+     */
+    fun isSelected(packageName: String): Boolean {
+        return isSelected(PackageIdTable.idOf(packageName))
+    }
+
+    /**
+     * Update the selected state for the application and persist it if changed
+     *
+     * @param packageName the application package name
+     * @param selected    whether the application is selected
+     */
+    @Synchronized
+    fun setSelected(packageName: String, selected: Boolean) {
+        val ids = actualIds()
+        if (ids.set(PackageIdTable.idOf(packageName), selected)) {
+            val value = HashSet<String>(ids.size * 2)
+            ids.forEach { id -> PackageIdTable.packageNameOf(id)?.let { value.add(it) } }
+            selectedApplicationsPref.set(value)
+            // shared preferences store own copy of the set, remember it so the bitset is not rebuilt
+            source = selectedApplicationsPref.get()
+        }
+    }
+
+    /**
+     * Get the ids actual for the current preference value. The preference returns the same set instance until
+     * the value is changed, so the identity check is enough to detect changes
+     */
+    private fun actualIds(): PackageIdSet {
+        val value = selectedApplicationsPref.get()
+        if (value !== source) {
+            ids = PackageIdSet.of(value)
+            source = value
+        }
+        return ids
+    }
+}
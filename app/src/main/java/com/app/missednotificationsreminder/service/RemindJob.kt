@@ -5,6 +5,7 @@ import androidx.work.CoroutineWorker
 import androidx.work.WorkerParameters
 import com.app.missednotificationsreminder.di.Injector.Companion.obtain
 import com.app.missednotificationsreminder.service.event.RemindEvents
+import com.app.missednotificationsreminder.service.util.ServiceLog
 import com.app.missednotificationsreminder.util.event.FlowEventBus
 import dagger.android.AndroidInjector
 import dagger.android.ContributesAndroidInjector
@@ -12,7 +13,6 @@ import kotlinx.coroutines.ExperimentalCoroutinesApi
 import kotlinx.coroutines.FlowPreview
 import kotlinx.coroutines.coroutineScope
 import kotlinx.coroutines.flow.*
-import timber.log.Timber
 import javax.inject.Inject
 
 /**
@@ -22,7 +22,7 @@ import javax.inject.Inject
 class RemindJob(context: Context, params: WorkerParameters)
     : CoroutineWorker(context, params) {
     init {
-        Timber.d("RemindJob() called with: params = %s",
+        ServiceLog.d("RemindJob() called with: params = %s",
                 params)
         // inject dependencies
         val appGraph: AndroidInjector<Any>? = obtain(context.applicationContext)
@@ -33,12 +33,12 @@ class RemindJob(context: Context, params: WorkerParameters)
     lateinit var mEventBus: FlowEventBus
 
     override suspend fun doWork(): Result = coroutineScope {
-        Timber.d("doWork() called")
+        ServiceLog.d("doWork() called")
         mEventBus.toFlow()
                 .filter { event -> event === RemindEvents.REMINDER_COMPLETED }
                 .onStart {  mEventBus.send(RemindEvents.REMIND)  }
                 .first()
-        Timber.d("doWork() done")
+        ServiceLog.d("doWork() done")
         Result.success()
     }
 
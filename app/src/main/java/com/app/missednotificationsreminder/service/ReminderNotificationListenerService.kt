@@ -13,10 +13,7 @@ import android.database.ContentObserver
 import android.graphics.Bitmap
 import android.graphics.BitmapFactory
 import android.hardware.display.DisplayManager
-import android.media.AudioAttributes
 import android.media.AudioManager
-import android.media.MediaPlayer
-import android.net.Uri
 import android.os.*
 import android.os.PowerManager.WakeLock
 import android.provider.Settings
@@ -35,21 +32,22 @@ import androidx.work.OneTimeWorkRequest
 import androidx.work.WorkManager
 import androidx.work.await
 import com.app.missednotificationsreminder.R
+import com.app.missednotificationsreminder.data.source.SelectedApplicationsDataSource
 import com.app.missednotificationsreminder.di.Injector.Companion.obtain
 import com.app.missednotificationsreminder.di.qualifiers.*
 import com.app.missednotificationsreminder.service.data.model.NotificationData
 import com.app.missednotificationsreminder.service.event.NotificationsUpdatedEvent
 import com.app.missednotificationsreminder.service.event.RemindEvents
 import com.app.missednotificationsreminder.service.util.PhoneStateUtils
+import com.app.missednotificationsreminder.service.util.ReminderSoundPlayer
+import com.app.missednotificationsreminder.service.util.ServiceLog
 import com.app.missednotificationsreminder.util.TimeUtils
 import com.app.missednotificationsreminder.util.event.Event
 import com.app.missednotificationsreminder.util.event.FlowEventBus
-import com.app.missednotificationsreminder.util.flow.ambWith
 import com.tfcporciuncula.flow.Preference
 import dagger.android.AndroidInjector
 import dagger.android.ContributesAndroidInjector
 import kotlinx.coroutines.*
-import kotlinx.coroutines.channels.awaitClose
 import kotlinx.coroutines.flow.*
 import timber.log.Timber
 import java.util.*
@@ -106,6 +104,9 @@ class ReminderNotificationListenerService : AbstractReminderNotificationListener
     @SelectedApplications
     lateinit var selectedApplications: Preference<Set<String>>
 
+    @Inject
+    lateinit var selectedApplicationsDataSource: SelectedApplicationsDataSource
+
     @Inject
     @IgnorePersistentNotifications
     lateinit var ignorePersistentNotifications: Preference<Boolean>
@@ -297,14 +298,14 @@ class ReminderNotificationListenerService : AbstractReminderNotificationListener
     override fun onCreate() {
         mDispatcher.onServicePreSuperOnCreate()
         super.onCreate()
-        Timber.d("onCreate")
+        ServiceLog.d("onCreate")
     }
 
     @Suppress("DEPRECATION")
     @CallSuper
     override fun onStart(intent: Intent?, startId: Int) {
         mDispatcher.onServicePreSuperOnStart()
-        Timber.d("onStart()")
+        ServiceLog.d("onStart()")
         super.onStart(intent, startId)
     }
 
@@ -319,7 +320,7 @@ class ReminderNotificationListenerService : AbstractReminderNotificationListener
 
     override fun attachBaseContext(base: Context?) {
         super.attachBaseContext(base)
-        Timber.d("attachBaseContext")
+        ServiceLog.d("attachBaseContext")
         initialize()
     }
 
@@ -369,75 +370,75 @@ class ReminderNotificationListenerService : AbstractReminderNotificationListener
         flowOf(
                 reminderInterval.asFlow()
                         .drop(1) // skip initial value emitted right after the subscription
-                        .onEach { Timber.d("Reminder interval changed") }
+                        .onEach { ServiceLog.d("Reminder interval changed") }
                         .map { true },
                 limitReminderRepeats.asFlow()
                         .drop(1) // skip initial value emitted right after the subscription
-                        .onEach { Timber.d("Limit reminder repeats changed") }
+                        .onEach { ServiceLog.d("Limit reminder repeats changed") }
                         .map { true },
                 createDismissNotificationPref.asFlow()
                         .drop(1) // skip initial value emitted right after the subscription
-                        .onEach { Timber.d("Create dismiss notification changed") }
+                        .onEach { ServiceLog.d("Create dismiss notification changed") }
                         .map { true },
                 createDismissNotificationImmediately.asFlow()
                         .drop(1) // skip initial value emitted right after the subscription
-                        .onEach { Timber.d("Create dismiss notification immediately changed") }
+                        .onEach { ServiceLog.d("Create dismiss notification immediately changed") }
                         .map { true },
                 reminderRepeats.asFlow()
                         .drop(1) // skip initial value emitted right after the subscription
-                        .onEach { Timber.d("Reminder repeats changed") }
+                        .onEach { ServiceLog.d("Reminder repeats changed") }
                         .map { true },
                 forceWakeLock.asFlow()
                         .drop(1) // skip initial value emitted right after the subscription
-                        .onEach { Timber.d("Force WakeLock changed") }
+                        .onEach { ServiceLog.d("Force WakeLock changed") }
                         .map { true },
                 selectedApplications.asFlow()
                         .drop(1) // skip initial value emitted right after the subscription
-                        .onEach { Timber.d("Selected applications changed") }
+                        .onEach { ServiceLog.d("Selected applications changed") }
                         .map { true },
                 ignorePersistentNotifications.asFlow()
                         .drop(1) // skip initial value emitted right after the subscription
-                        .onEach { Timber.d("Ignore persistent notifications changed") }
+                        .onEach { ServiceLog.d("Ignore persistent notifications changed") }
                         .map { true },
                 respectPhoneCalls.asFlow()
                         .drop(1) // skip initial value emitted right after the subscription
-                        .onEach { Timber.d("Respect phone calls changed") },
+                        .onEach { ServiceLog.d("Respect phone calls changed") },
                 respectRingerMode.asFlow()
                         .drop(1) // skip initial value emitted right after the subscription
-                        .onEach { Timber.d("Respect ringer mode changed") },
+                        .onEach { ServiceLog.d("Respect ringer mode changed") },
                 remindWhenScreenIsOn.asFlow()
                         .drop(1) // skip initial value emitted right after the subscription
-                        .onEach { Timber.d("Remind when screen is on changed") },
+                        .onEach { ServiceLog.d("Remind when screen is on changed") },
                 schedulerEnabled.asFlow()
                         .drop(1) // skip initial value emitted right after the subscription
-                        .onEach { Timber.d("Scheduler enabled changed") }
+                        .onEach { ServiceLog.d("Scheduler enabled changed") }
                         .map { true },
                 schedulerMode.asFlow()
                         .drop(1) // skip initial value emitted right after the subscription
-                        .onEach { Timber.d("Scheduler mode changed") }
+                        .onEach { ServiceLog.d("Scheduler mode changed") }
                         .map { true },
                 schedulerRangeBegin.asFlow()
                         .drop(1) // skip initial value emitted right after the subscription
-                        .onEach { Timber.d("Scheduler range begin changed") }
+                        .onEach { ServiceLog.d("Scheduler range begin changed") }
                         .map { true },
                 schedulerRangeEnd.asFlow()
                         .drop(1) // skip initial value emitted right after the subscription
-                        .onEach { Timber.d("Scheduler range end changed") }
+                        .onEach { ServiceLog.d("Scheduler range end changed") }
                         .map { true },
                 vibrate.asFlow()
                         .drop(1) // skip initial value emitted right after the subscription
-                        .onEach { Timber.d("Vibrate changed") },
+                        .onEach { ServiceLog.d("Vibrate changed") },
                 vibrationPattern.asFlow()
                         .drop(1) // skip initial value emitted right after the subscription
-                        .onEach { Timber.d("Vibration pattern changed") },
+                        .onEach { ServiceLog.d("Vibration pattern changed") },
                 ringerMode
                         .drop(1) // skip initial value emitted right after the subscription
-                        .onEach { v -> Timber.d("Ringer mode changed to %d", v) }
+                        .onEach { v -> ServiceLog.d("Ringer mode changed to %d", v) }
                         .filter { respectRingerMode.get() }
                         .map { true },
                 dndEnabled
                         .drop(1) // skip initial value emitted right after the subscription
-                        .onEach { v -> Timber.d("DND mode changed to %b", v) }
+                        .onEach { v -> ServiceLog.d("DND mode changed to %b", v) }
                         .filter { respectRingerMode.get() })
                 .flattenMerge()
                 .filter { ready.value }
@@ -455,6 +456,12 @@ class ReminderNotificationListenerService : AbstractReminderNotificationListener
                     actualizeNotificationData()
                 }
                 .launchIn(lifecycleScope)
+        // preload the reminder sound whenever it or its stream changes
+        flowOf(reminderRingtone.asFlow(), respectRingerMode.asFlow())
+                .flattenMerge()
+                .debounce(500)
+                .onEach { remindJobHandler.preloadSound() }
+                .launchIn(lifecycleScope)
         // monitor for the remind events sent via event bus
         mEventBus.toFlow()
                 .filter { event -> event === RemindEvents.REMIND }
@@ -471,34 +478,34 @@ class ReminderNotificationListenerService : AbstractReminderNotificationListener
      * Check whether the waking alarm should be scheduled or no
      */
     private fun checkWakingConditions() {
-        Timber.d("checkWakingConditions() called %s", Thread.currentThread().name)
+        ServiceLog.d("checkWakingConditions() called %s", Thread.currentThread().name)
         try {
             if (active.get()) {
-                Timber.d("checkWakingConditions: already active, skipping")
+                ServiceLog.d("checkWakingConditions: already active, skipping")
                 return
             }
             if (!reminderEnabled.get()) {
-                Timber.d("checkWakingConditions: disabled, skipping")
+                ServiceLog.d("checkWakingConditions: disabled, skipping")
                 return
             }
             if (respectRingerMode.get()) {
                 // if ringer mode should be respected
                 if (ringerMode.value == AudioManager.RINGER_MODE_SILENT) {
-                    Timber.d("checkWakingConditions: respecting silent mode, skipping")
+                    ServiceLog.d("checkWakingConditions: respecting silent mode, skipping")
                     return
                 }
                 if (dndEnabled.value) {
-                    Timber.d("checkWakingConditions: respecting DND mode, skipping")
+                    ServiceLog.d("checkWakingConditions: respecting DND mode, skipping")
                     return
                 }
                 if (ringerMode.value == AudioManager.RINGER_MODE_VIBRATE && !vibrate.get()) {
-                    Timber.d("checkWakingConditions: respecting vibrate mode while vibration is not enabled, skipping")
+                    ServiceLog.d("checkWakingConditions: respecting vibrate mode while vibration is not enabled, skipping")
                     return
                 }
             }
-            val schedule = checkNotificationForAtLeastOnePackageExists(selectedApplications.get(), ignorePersistentNotifications.get())
+            val schedule = checkNotificationForAtLeastOnePackageExists(selectedApplicationsDataSource, ignorePersistentNotifications.get())
             if (schedule) {
-                Timber.d("checkWakingConditions: there are notifications from selected applications. Scheduling reminder")
+                ServiceLog.d("checkWakingConditions: there are notifications from selected applications. Scheduling reminder")
                 // remember active state
                 active.set(true)
                 if (limitReminderRepeats.get()) {
@@ -506,7 +513,7 @@ class ReminderNotificationListenerService : AbstractReminderNotificationListener
                 }
                 scheduleNextWakeup(false)
             } else {
-                Timber.d("checkWakingConditions: there are no notifications from selected applications to periodically remind")
+                ServiceLog.d("checkWakingConditions: there are no notifications from selected applications to periodically remind")
             }
         } catch (t: Throwable) {
             Timber.e(t, "Unexpected failure")
@@ -517,7 +524,7 @@ class ReminderNotificationListenerService : AbstractReminderNotificationListener
      * Cancel dismiss notification if one is present.
      */
     private fun cancelDismissNotification() {
-        Timber.d("cancelDismissNotification() called")
+        ServiceLog.d("cancelDismissNotification() called")
         // This will not send mStopRemindersIntent. Only user actions do.
         notificationManager.cancel(DISMISS_NOTIFICATION_ID)
     }
@@ -526,7 +533,7 @@ class ReminderNotificationListenerService : AbstractReminderNotificationListener
      * Create dismiss notification unless one is already present.
      */
     private fun createDismissNotification(): Notification {
-        Timber.d("createDismissNotification() called")
+        ServiceLog.d("createDismissNotification() called")
         val channelId = "MNR dismiss notification"
         val builder = NotificationCompat.Builder(this, channelId)
                 .setSmallIcon(R.drawable.ic_notification) // this is custom icon, looks betetr
@@ -561,7 +568,7 @@ class ReminderNotificationListenerService : AbstractReminderNotificationListener
     private fun scheduleNextWakeup(repeating: Boolean) {
         var scheduledTime: Long = 0
         if (limitReminderRepeats.get() && remainingRepeats-- <= 0) {
-            Timber.d("scheduleNextWakeup: ran out of reminder repeats, stopping")
+            ServiceLog.d("scheduleNextWakeup: ran out of reminder repeats, stopping")
             stopWaking()
             return
         }
@@ -575,7 +582,7 @@ class ReminderNotificationListenerService : AbstractReminderNotificationListener
         if (createDismissNotificationPref.get() && (repeating || createDismissNotificationImmediately.get())) {
             val notification = createDismissNotification()
             if (!repeating && foregroundAllowed() && scheduledTime == 0L) {
-                Timber.d("Starting foreground")
+                ServiceLog.d("Starting foreground")
                 startedInForeground = true
                 startForeground(DISMISS_NOTIFICATION_ID, notification.apply {
                     flags = flags or NotificationCompat.FLAG_FOREGROUND_SERVICE
@@ -593,18 +600,18 @@ class ReminderNotificationListenerService : AbstractReminderNotificationListener
             }
         }
         if (scheduledTime == 0L) {
-            Timber.d("scheduleNextWakup: Schedule reminder for %1\$d seconds",
+            ServiceLog.d("scheduleNextWakup: Schedule reminder for %1\$d seconds",
                     reminderInterval.get())
             if (forceWakeLock.get() && wakeLock == null) {
                 // if wakelock workaround should be used
-                Timber.d("scheduleNextWakup: force wake lock")
+                ServiceLog.d("scheduleNextWakup: force wake lock")
                 wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK,
                         ReminderNotificationListenerService::class.java.simpleName)
                         .apply { acquire() }
             }
             scheduleNextWakeupForOffset(reminderInterval.get() * TimeUtils.MILLIS_IN_SECOND.toLong())
         } else {
-            Timber.d("scheduleNextWakup: Schedule reminder for time %1\$tY-%1\$tm-%1\$td %1\$tH:%1\$tM:%1\$tS",
+            ServiceLog.d("scheduleNextWakup: Schedule reminder for time %1\$tY-%1\$tm-%1\$td %1\$tH:%1\$tM:%1\$tS",
                     Date(scheduledTime))
             releaseWakeLockIfRequired()
             scheduleNextWakeupForOffset(scheduledTime - System.currentTimeMillis())
@@ -617,12 +624,12 @@ class ReminderNotificationListenerService : AbstractReminderNotificationListener
      * @time the next wakeup time offset
      */
     private fun scheduleNextWakeupForOffset(timeOffset: Long) {
-        Timber.d("scheduleNextWakup: called")
+        ServiceLog.d("scheduleNextWakup: called")
         timerJob = lifecycleScope.launch {
             if (wakeLock != null) {
                 // use the manual timer action to trigger pending intent receiver instead instead of alarm manager
                 delay(timeOffset)
-                Timber.d("Wake from subscription")
+                ServiceLog.d("Wake from subscription")
                 remindJobHandler.remind()
             } else {
                 workManager.beginUniqueWork(
@@ -642,7 +649,7 @@ class ReminderNotificationListenerService : AbstractReminderNotificationListener
      * Stop scheduled wakeup alarm for the periodical sound notification
      */
     private fun stopWaking() {
-        Timber.d("stopWaking() called")
+        ServiceLog.d("stopWaking() called")
         stopWaking(false)
         timerJob?.run {
             cancel()
@@ -664,7 +671,7 @@ class ReminderNotificationListenerService : AbstractReminderNotificationListener
      */
     private fun releaseWakeLockIfRequired() {
         wakeLock?.let {
-            Timber.d("releaseWakeLockIfRequired: release wake lock")
+            ServiceLog.d("releaseWakeLockIfRequired: release wake lock")
             try {
                 if (it.isHeld) {
                     it.release()
@@ -683,9 +690,9 @@ class ReminderNotificationListenerService : AbstractReminderNotificationListener
      * when the pending intent may be changed or action scheduled by previous app run.
      */
     private fun stopWaking(force: Boolean) {
-        Timber.d("stopWaking")
+        ServiceLog.d("stopWaking")
         if (active.compareAndSet(true, false) || force) {
-            Timber.d("stopWaking: cancel reminder")
+            ServiceLog.d("stopWaking: cancel reminder")
         }
     }
 
@@ -694,9 +701,11 @@ class ReminderNotificationListenerService : AbstractReminderNotificationListener
     override fun onDestroy() {
         mDispatcher.onServicePreSuperOnDestroy()
         super.onDestroy()
-        Timber.d("onDestroy")
+        ServiceLog.d("onDestroy")
         // stop any scheduled alarms
         stopWaking()
+        // release the preloaded reminder sound
+        remindJobHandler.closeSoundPlayer()
         // unregister ringer mode changed receiver
         unregisterReceiver(ringerModeChangedReceiver)
         // unregister zen mode changed observer
@@ -706,17 +715,17 @@ class ReminderNotificationListenerService : AbstractReminderNotificationListener
     }
 
     override suspend fun onNotificationPosted(notificationData: NotificationData) {
-        Timber.d("onNotificationPosted: %s", notificationData)
+        ServiceLog.d("onNotificationPosted: %s", notificationData)
         val existingElement = existingElement(notificationData)
         if (existingElement != null) {
-            Timber.d("onNotificationPosted: removing previous %s", existingElement)
+            ServiceLog.d("onNotificationPosted: removing previous %s", existingElement)
             availableNotifications.remove(existingElement)
         }
         availableNotifications.add(notificationData)
         if (!initializing) {
             mEventBus.send(NotificationsUpdatedEvent(notificationsData))
         }
-        if (!initializing && ready.value && selectedApplications.get().contains(notificationData.packageName)) {
+        if (!initializing && ready.value && selectedApplicationsDataSource.isSelected(notificationData.packageId)) {
             // check waking conditions only if notification has been posted for the monitored application to prevent
             // mRemainingRepeats overcome in case reminder is already stopped but new notification arrived from any not
             // monitored app
@@ -743,21 +752,21 @@ class ReminderNotificationListenerService : AbstractReminderNotificationListener
     }
 
     override suspend fun onNotificationRemoved(notificationData: NotificationData) {
-        Timber.d("onNotificationRemoved: %s", notificationData)
+        ServiceLog.d("onNotificationRemoved: %s", notificationData)
         if (!availableNotifications.remove(notificationData)) {
             Timber.w("onNotificationRemoved: removal failed")
         }
         if (!initializing) {
             mEventBus.send(NotificationsUpdatedEvent(notificationsData))
         }
-        if (active.get() && !checkNotificationForAtLeastOnePackageExists(selectedApplications.get(), ignorePersistentNotifications.get())) {
+        if (active.get() && !checkNotificationForAtLeastOnePackageExists(selectedApplicationsDataSource, ignorePersistentNotifications.get())) {
             // stop alarm if there are no more notifications to update
             stopWaking()
         }
     }
 
     override fun onReady() {
-        Timber.d("onReady")
+        ServiceLog.d("onReady")
         ready.value = true
     }
 
@@ -773,11 +782,11 @@ class ReminderNotificationListenerService : AbstractReminderNotificationListener
     /**
      * Check whether the at least one notification for specified packages is present in the status bar
      *
-     * @param packages      the collection of packages to check
+     * @param packages      the selected packages to check
      * @param ignoreOngoing whether the ongoing notifications should be ignored
      * @return true if notification for at least one package is found, false otherwise
      */
-    private fun checkNotificationForAtLeastOnePackageExists(packages: Collection<String>, ignoreOngoing: Boolean): Boolean {
+    private fun checkNotificationForAtLeastOnePackageExists(packages: SelectedApplicationsDataSource, ignoreOngoing: Boolean): Boolean {
         // Remove notifications that were already cancelled to avoid memory leaks.
         val copy: List<NotificationData> = ArrayList(ignoredNotifications)
         for (ignoredNotification in copy) {
@@ -788,19 +797,19 @@ class ReminderNotificationListenerService : AbstractReminderNotificationListener
         var result = false
         for (notificationData in notificationsData) {
             val packageName = notificationData.packageName
-            Timber.d("checkNotificationForAtLeastOnePackageExists: checking package %1\$s", packageName)
-            val contains = packages.contains(packageName)
+            ServiceLog.d("checkNotificationForAtLeastOnePackageExists: checking package %1\$s", packageName)
+            val contains = packages.isSelected(notificationData.packageId)
             if (contains && ignoreOngoing && notificationData.flags and Notification.FLAG_ONGOING_EVENT == Notification.FLAG_ONGOING_EVENT) {
-                Timber.d("checkNotificationForAtLeastOnePackageExists: found ongoing match which is requested to be skipped")
+                ServiceLog.d("checkNotificationForAtLeastOnePackageExists: found ongoing match which is requested to be skipped")
                 continue
             }
             if (ignoredNotifications.contains(notificationData)) {
-                Timber.d("checkNotificationForAtLeastOnePackageExists: notification ignored")
+                ServiceLog.d("checkNotificationForAtLeastOnePackageExists: notification ignored")
                 continue
             }
             result = result or contains
             if (result) {
-                Timber.d("checkNotificationForAtLeastOnePackageExists: found match for package %1\$s", packageName)
+                ServiceLog.d("checkNotificationForAtLeastOnePackageExists: found match for package %1\$s", packageName)
                 break
             }
         }
@@ -812,7 +821,7 @@ class ReminderNotificationListenerService : AbstractReminderNotificationListener
      */
     internal inner class RingerModeChangedReceiver : BroadcastReceiver() {
         override fun onReceive(context: Context, intent: Intent) {
-            Timber.d("onReceive: %s", intent)
+            ServiceLog.d("onReceive: %s", intent)
             ringerModeUpdated()
         }
 
@@ -841,14 +850,14 @@ class ReminderNotificationListenerService : AbstractReminderNotificationListener
         }
 
         private fun zenModeUpdated() {
-            Timber.d("zenModeUpdated() called")
+            ServiceLog.d("zenModeUpdated() called")
             try {
                 val zenMode = if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
                     Settings.Global.getInt(contentResolver, "zen_mode")
                 } else {
                     DND_OFF
                 }
-                Timber.d("zenModeUpdated: %d", zenMode)
+                ServiceLog.d("zenModeUpdated: %d", zenMode)
                 dndEnabled.value = zenMode != DND_OFF
             } catch (e: Throwable) {
                 Timber.e(e)
@@ -865,14 +874,10 @@ class ReminderNotificationListenerService : AbstractReminderNotificationListener
      */
     internal inner class RemindJobHandler {
         /**
-         * Media player used to play notification sound
+         * The player of the preloaded notification sound, created on first use
          */
-        private val mediaPlayer: MediaPlayer by lazy {
-            MediaPlayer()
-                    .apply {
-                        setWakeMode(applicationContext, PowerManager.PARTIAL_WAKE_LOCK)
-                    }
-        }
+        private val soundPlayerLazy = lazy { ReminderSoundPlayer(applicationContext) }
+        private val soundPlayer by soundPlayerLazy
 
         /**
          * The reminder subscription
@@ -886,19 +891,19 @@ class ReminderNotificationListenerService : AbstractReminderNotificationListener
 
         suspend fun remind() = coroutineScope {
             reminderJob = launch {
-                Timber.d("onReceive: current thread %1\$s", Thread.currentThread().name)
+                ServiceLog.d("onReceive: current thread %1\$s", Thread.currentThread().name)
                 if (!active.get()) {
                     Timber.w("onReceive: Invalid service activity state, stopping reminder")
                     stopWaking(true)
                     return@launch
                 }
                 if (!remindWhenScreenIsOn.get() && isScreenOn(applicationContext)) {
-                    Timber.d("onReceive: The screen is on and remind when screen is on is not specified, skip notification")
+                    ServiceLog.d("onReceive: The screen is on and remind when screen is on is not specified, skip notification")
                 } else if (PhoneStateUtils.isCallActive(applicationContext) && respectPhoneCalls.get()) {
-                    Timber.d("onReceive: The phone call is active and respect phone calls setting is specified, skip notification")
+                    ServiceLog.d("onReceive: The phone call is active and respect phone calls setting is specified, skip notification")
                 } else {
                     try {
-                        Timber.d("onReceive: The screen is off, notify")
+                        ServiceLog.d("onReceive: The screen is off, notify")
                         interruptReminderIfActive()
                         val playbackCompleted = async { playReminder() }
                         // Start without a delay
@@ -913,7 +918,7 @@ class ReminderNotificationListenerService : AbstractReminderNotificationListener
                         playbackCompleted.await()
                         vibrationCompletedAtLeastOnce.await()
                         reminderCompleted()
-                        Timber.d("Reminder completed")
+                        ServiceLog.d("Reminder completed")
                     } finally {
                         if (coroutineContext[Job]?.isCancelled != false) {
                             cancelVibrator()
@@ -932,7 +937,7 @@ class ReminderNotificationListenerService : AbstractReminderNotificationListener
         }
 
         private fun cancelVibrator() {
-            Timber.d("cancelVibrator() called")
+            ServiceLog.d("cancelVibrator() called")
             vibrator.cancel()
             vibrationWakeLock?.run {
                 try {
@@ -961,82 +966,68 @@ class ReminderNotificationListenerService : AbstractReminderNotificationListener
                     @Suppress("DEPRECATION")
                     vibrator.vibrate(pattern, 0)
                 }
-                Timber.d("Minimum vibration duration: %d", vibrationDuration)
+                ServiceLog.d("Minimum vibration duration: %d", vibrationDuration)
                 delay(vibrationDuration)
-                Timber.d("Minimum vibration completed")
+                ServiceLog.d("Minimum vibration completed")
             } catch (ex: Exception) {
                 Timber.e(ex)
             }
         }
 
         private suspend fun playReminder() {
-            callbackFlow<Any> {
-                try {
-                    mediaPlayer.reset()
-                    // use alternative stream if respect ringer mode is disabled
-                    val streamType = if (respectRingerMode.get()) AudioManager.STREAM_NOTIFICATION else AudioManager.STREAM_ALARM
-                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                        mediaPlayer.setAudioAttributes(AudioAttributes.Builder()
-                                .setLegacyStreamType(streamType)
-                                .build())
-                    } else {
-                        @Suppress("DEPRECATION")
-                        mediaPlayer.setAudioStreamType(streamType)
-                    }
-                    if (respectRingerMode.get() && (ringerMode.value == AudioManager.RINGER_MODE_VIBRATE || ringerMode.value == AudioManager.RINGER_MODE_SILENT)) {
-                        // mute sound explicitly for silent ringer modes because some user claims that sound is not muted on their devices in such cases
-                        mediaPlayer.setVolume(0f, 0f)
-                    } else {
-                        mediaPlayer.setVolume(1f, 1f)
-                    }
-                    mediaPlayer.setOnErrorListener { _, what, extra ->
-                        Timber.e("MediaPlayer error %1\$d %2\$d", what, extra)
-                        close(Error(String.format("MediaPlayer error %1\$d %2\$d", what, extra)))
-                        false
-                    }
-                    mediaPlayer.setOnCompletionListener {
-                        Timber.d("completion")
-                        close()
-                    }
-                    // get the selected notification sound URI
-                    val ringtone = reminderRingtone.get()
-                    if (TextUtils.isEmpty(ringtone)) {
-                        Timber.w("The reminder ringtone is not specified. Skip playing")
-                        close()
-                    } else {
-                        Timber.d("onReceive: ringtone %1\$s", ringtone)
-                        val notification = Uri.parse(ringtone)
-                        mediaPlayer.setOnPreparedListener {
-                            Timber.d("MediaPlayer prepared")
-                            mediaPlayer.start()
-                            offer(notification)
-                        }
-                        mediaPlayer.setDataSource(applicationContext, notification)
-                        mediaPlayer.prepareAsync()
-                    }
-                } catch (ex: Exception) {
-                    Timber.e(ex)
-                    close(ex)
-                }
-                awaitClose {
-                    Timber.d("playReminder: close")
-                    if (mediaPlayer.isPlaying) {
-                        mediaPlayer.stop()
-                    }
-                    mediaPlayer.setOnCompletionListener(null)
-                    mediaPlayer.setOnErrorListener(null)
-                    mediaPlayer.setOnPreparedListener(null)
-                }
+            // get the selected notification sound URI
+            val ringtone = reminderRingtone.get()
+            if (TextUtils.isEmpty(ringtone)) {
+                Timber.w("The reminder ringtone is not specified. Skip playing")
+                return
+            }
+            ServiceLog.d("onReceive: ringtone %1\$s", ringtone)
+            // mute sound explicitly for silent ringer modes because some user claims that sound is not muted on their devices in such cases
+            val volume = if (respectRingerMode.get() && (ringerMode.value == AudioManager.RINGER_MODE_VIBRATE || ringerMode.value == AudioManager.RINGER_MODE_SILENT)) 0f else 1f
+            try {
+                soundPlayer.play(ringtone, reminderStreamType(), volume)
+            } catch (ex: CancellationException) {
+                throw ex
+            } catch (ex: Throwable) {
+                Timber.e(ex)
+            } finally {
+                ServiceLog.d("Playback completed")
+            }
+        }
+
+        /**
+         * Close the sound player if it was created
+         */
+        fun closeSoundPlayer() {
+            if (soundPlayerLazy.isInitialized()) {
+                soundPlayer.close()
+            }
+        }
+
+        /**
+         * Preload the reminder sound so the reminders start playing without the preparation delay
+         */
+        suspend fun preloadSound() {
+            val ringtone = reminderRingtone.get()
+            if (TextUtils.isEmpty(ringtone)) {
+                soundPlayer.release()
+                return
+            }
+            try {
+                soundPlayer.prepare(ringtone, reminderStreamType())
+            } catch (ex: CancellationException) {
+                throw ex
+            } catch (ex: Exception) {
+                Timber.e(ex, "Failed to preload reminder sound")
             }
-                    .ambWith(flow {
-                        delay(5000)
-                        throw Error("onReceive: media player initializes too long, didn't receive onComplete for 5 seconds.")
-                    })
-                    .catch { t: Throwable? -> Timber.e(t) }
-                    .onCompletion { Timber.d("Playback completed") }
-                    .collect()
         }
 
+        /**
+         * Get the stream type to play the reminder sound on. Alternative stream is used if respect ringer mode is
+         * disabled
+         */
+        private fun reminderStreamType() = if (respectRingerMode.get()) AudioManager.STREAM_NOTIFICATION else AudioManager.STREAM_ALARM
+
         /**
          * Is the screen of the device on.
          *
@@ -1078,7 +1069,7 @@ class ReminderNotificationListenerService : AbstractReminderNotificationListener
     internal inner class StopRemindersReceiver : BroadcastReceiver() {
         override fun onReceive(context: Context, intent: Intent) {
             lifecycleScope.launch {
-                Timber.d("dismiss notification cancelled")
+                ServiceLog.d("dismiss notification cancelled")
                 ignoreAllCurrentNotifications()
                 stopWaking()
             }
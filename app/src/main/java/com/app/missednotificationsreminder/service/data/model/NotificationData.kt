@@ -1,5 +1,7 @@
 package com.app.missednotificationsreminder.service.data.model
 
+import com.app.missednotificationsreminder.data.model.PackageIdTable
+
 /**
  * The class to store notification information
  */
@@ -20,6 +22,10 @@ open class NotificationData(
          * Notification specific flags
          */
         val flags: Int) {
+    /**
+     * The [PackageIdTable] id of the notification related application package name
+     */
+    val packageId: Int = PackageIdTable.idOf(packageName)
 
     override fun equals(other: Any?): Boolean {
         if (this === other) return true
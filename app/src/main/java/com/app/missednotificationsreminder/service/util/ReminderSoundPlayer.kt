@@ -0,0 +1,238 @@
+package com.app.missednotificationsreminder.service.util
+
+import android.content.Context
+import android.media.AudioAttributes
+import android.media.MediaPlayer
+import android.net.Uri
+import android.os.Build
+import android.os.PowerManager
+import android.os.SystemClock
+import android.util.Log
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.suspendCancellableCoroutine
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.withContext
+import kotlinx.coroutines.withTimeoutOrNull
+import timber.log.Timber
+import java.io.File
+import java.io.IOException
+import kotlin.coroutines.resume
+import kotlin.coroutines.resumeWithException
+
+/**
+ * The reminder sound player which prepares the sound once when it changes and then only restarts the prepared
+ * player for each reminder, so the sound starts within milliseconds. The sound is copied to the private cache file
+ * when it is not larger than [maxCachedSize] bytes, so the player is not prepared through the content provider.
+ *
+ * @param context       the application context
+ * @param maxCachedSize the maximum size of the sound to copy to the cache file
+ */
+class ReminderSoundPlayer(
+        private val context: Context,
+        private val maxCachedSize: Long = DEFAULT_MAX_CACHED_SIZE) {
+    private val mutex = Mutex()
+
+    private val cacheFile = File(context.cacheDir, CACHE_FILE_NAME)
+
+    /**
+     * The prepared player, null if the sound is not prepared
+     */
+    private var mediaPlayer: MediaPlayer? = null
+
+    /*
+     * The sound and stream type the player is prepared for
+     */
+    private var preparedRingtone: String? = null
+    private var preparedStreamType = 0
+
+    /**
+     * Whether the player is closed and can't be prepared anymore
+     */
+    private var closed = false
+
+    /**
+     * Prepare the player for the sound if it is not yet prepared
+     *
+     * @param ringtone   the ringtone URI
+     * @param streamType the audio stream type to play the sound on
+     */
+    suspend fun prepare(ringtone: String, streamType: Int) = mutex.withLock {
+        prepareLocked(ringtone, streamType)
+    }
+
+    private suspend fun prepareLocked(ringtone: String, streamType: Int): MediaPlayer {
+        mediaPlayer?.let { player ->
+            if (ringtone == preparedRingtone && streamType == preparedStreamType) {
+                return player
+            }
+        }
+        releaseLocked()
+        if (closed) throw CancellationException("The player is closed")
+        val start = SystemClock.elapsedRealtime()
+        // the player is created on the calling thread to receive the callbacks on its looper
+        val player = MediaPlayer()
+        try {
+            withContext(Dispatchers.IO) {
+                val cached = cacheSound(Uri.parse(ringtone))
+                player.setWakeMode(context, PowerManager.PARTIAL_WAKE_LOCK)
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                    player.setAudioAttributes(AudioAttributes.Builder()
+                            .setLegacyStreamType(streamType)
+                            .build())
+                } else {
+                    @Suppress("DEPRECATION")
+                    player.setAudioStreamType(streamType)
+                }
+                if (cached) {
+                    player.setDataSource(cacheFile.absolutePath)
+                } else {
+                    player.setDataSource(context, Uri.parse(ringtone))
+                }
+            }
+            // prepared asynchronously so the preparation is abandoned when the coroutine is cancelled
+            suspendCancellableCoroutine<Unit> { continuation ->
+                player.setOnPreparedListener {
+                    if (continuation.isActive) continuation.resume(Unit)
+                }
+                player.setOnErrorListener { _, what, extra ->
+                    if (continuation.isActive) {
+                        continuation.resumeWithException(IOException(String.format("MediaPlayer prepare error %1\$d %2\$d", what, extra)))
+                    }
+                    true
+                }
+                player.prepareAsync()
+            }
+            if (closed) throw CancellationException("The player is closed")
+        } catch (ex: Throwable) {
+            player.release()
+            throw ex
+        } finally {
+            player.setOnPreparedListener(null)
+            player.setOnErrorListener(null)
+        }
+        mediaPlayer = player
+        preparedRingtone = ringtone
+        preparedStreamType = streamType
+        ServiceLog.d("prepare: prepared %1\$s in %2\$d ms", ringtone, SystemClock.elapsedRealtime() - start)
+        return player
+    }
+
+    /**
+     * Copy the sound to the [cacheFile] if it is not larger than [maxCachedSize]
+     *
+     * @return true if the sound is cached
+     */
+    private fun cacheSound(uri: Uri): Boolean {
+        cacheFile.delete()
+        try {
+            val input = context.contentResolver.openInputStream(uri) ?: return false
+            input.use {
+                cacheFile.outputStream().use { output ->
+                    val buffer = ByteArray(BUFFER_SIZE)
+                    var size = 0L
+                    while (true) {
+                        val read = input.read(buffer)
+                        if (read == -1) break
+                        size += read
+                        if (size > maxCachedSize) {
+                            ServiceLog.d("cacheSound: the sound is too large to cache")
+                            break
+                        }
+                        output.write(buffer, 0, read)
+                    }
+                    if (size <= maxCachedSize) {
+                        return true
+                    }
+                }
+            }
+        } catch (ex: IOException) {
+            Timber.w(ex, "cacheSound: failed to cache %s", uri)
+        }
+        cacheFile.delete()
+        return false
+    }
+
+    /**
+     * Play the sound and wait for the playback completion. The playback is stopped if the coroutine is cancelled
+     *
+     * @param ringtone   the ringtone URI
+     * @param streamType the audio stream type to play the sound on
+     * @param volume     the playback volume
+     */
+    suspend fun play(ringtone: String, streamType: Int, volume: Float) = mutex.withLock {
+        val start = SystemClock.elapsedRealtime()
+        val preloaded = mediaPlayer != null && ringtone == preparedRingtone && streamType == preparedStreamType
+        val player = withTimeoutOrNull(PREPARE_TIMEOUT) { prepareLocked(ringtone, streamType) }
+                ?: throw Error("play: media player initializes too long, not prepared for 5 seconds.")
+        try {
+            suspendCancellableCoroutine<Unit> { continuation ->
+                player.setOnCompletionListener {
+                    ServiceLog.d("completion")
+                    if (continuation.isActive) continuation.resume(Unit)
+                }
+                player.setOnErrorListener { _, what, extra ->
+                    Timber.e("MediaPlayer error %1\$d %2\$d", what, extra)
+                    if (continuation.isActive) {
+                        continuation.resumeWithException(Error(String.format("MediaPlayer error %1\$d %2\$d", what, extra)))
+                    }
+                    true
+                }
+                continuation.invokeOnCancellation {
+                    // stop would require the player to be prepared again
+                    if (player.isPlaying) {
+                        player.pause()
+                    }
+                }
+                player.setVolume(volume, volume)
+                player.seekTo(0)
+                player.start()
+                if (ServiceLog.isLoggable(Log.DEBUG)) {
+                    ServiceLog.d("play: started in %1\$d ms, preloaded %2\$b",
+                            SystemClock.elapsedRealtime() - start, preloaded)
+                }
+            }
+        } catch (ex: Throwable) {
+            if (ex !is CancellationException) {
+                // the player is in the error state
+                releaseLocked()
+            }
+            throw ex
+        } finally {
+            player.setOnCompletionListener(null)
+            player.setOnErrorListener(null)
+            ServiceLog.d("play: completed in %1\$d ms", SystemClock.elapsedRealtime() - start)
+        }
+    }
+
+    /**
+     * Release the prepared player
+     */
+    suspend fun release() = mutex.withLock {
+        releaseLocked()
+    }
+
+    /**
+     * Release the prepared player without waiting for the playback or preparation in progress, the
+     * player being prepared is released once the preparation is interrupted. Should be called on
+     * the main thread the player is used on, the player can't be prepared anymore
+     */
+    fun close() {
+        closed = true
+        releaseLocked()
+    }
+
+    private fun releaseLocked() {
+        mediaPlayer?.release()
+        mediaPlayer = null
+        preparedRingtone = null
+    }
+
+    companion object {
+        private const val CACHE_FILE_NAME = "reminder_sound"
+        private const val DEFAULT_MAX_CACHED_SIZE = 2L * 1024 * 1024
+        private const val BUFFER_SIZE = 8 * 1024
+        private const val PREPARE_TIMEOUT = 5000L
+    }
+}
@@ -0,0 +1,97 @@
+package com.app.missednotificationsreminder.service.util
+
+import android.util.Log
+import timber.log.Timber
+
+/**
+ * The level gated logging facade for the service hot paths. The level is checked before anything
+ * is passed to [Timber], and the overloads with the primitive arguments avoid boxing and varargs
+ * arrays, so the suppressed calls don't allocate. Messages are passed to [Timber] as the templates
+ * with arguments, the same as the direct [Timber] calls.
+ */
+object ServiceLog {
+    /**
+     * The minimum priority of the messages to log, one of the [Log] priority constants
+     */
+    @Volatile
+    @JvmStatic
+    var minLevel = Log.VERBOSE
+
+    @JvmStatic
+    fun isLoggable(priority: Int) = priority >= minLevel
+
+    @JvmStatic
+    fun v(message: String) {
+        if (isLoggable(Log.VERBOSE)) Timber.v(message)
+    }
+
+    @JvmStatic
+    fun v(message: String, arg: Any?) {
+        if (isLoggable(Log.VERBOSE)) Timber.v(message, arg)
+    }
+
+    @JvmStatic
+    fun v(message: String, arg: Int) {
+        if (isLoggable(Log.VERBOSE)) Timber.v(message, arg)
+    }
+
+    @JvmStatic
+    fun v(message: String, arg1: Any?, arg2: Any?, arg3: Any?) {
+        if (isLoggable(Log.VERBOSE)) Timber.v(message, arg1, arg2, arg3)
+    }
+
+    @JvmStatic
+    fun v(message: String, arg1: Int, arg2: Int, arg3: Boolean) {
+        if (isLoggable(Log.VERBOSE)) Timber.v(message, arg1, arg2, arg3)
+    }
+
+    @JvmStatic
+    fun d(message: String) {
+        if (isLoggable(Log.DEBUG)) Timber.d(message)
+    }
+
+    @JvmStatic
+    fun d(message: String, arg: Any?) {
+        if (isLoggable(Log.DEBUG)) Timber.d(message, arg)
+    }
+
+    @JvmStatic
+    fun d(message: String, arg: Int) {
+        if (isLoggable(Log.DEBUG)) Timber.d(message, arg)
+    }
+
+    @JvmStatic
+    fun d(message: String, arg: Long) {
+        if (isLoggable(Log.DEBUG)) Timber.d(message, arg)
+    }
+
+    @JvmStatic
+    fun d(message: String, arg: Boolean) {
+        if (isLoggable(Log.DEBUG)) Timber.d(message, arg)
+    }
+
+    @JvmStatic
+    fun d(message: String, arg1: Any?, arg2: Any?) {
+        if (isLoggable(Log.DEBUG)) Timber.d(message, arg1, arg2)
+    }
+
+    @JvmStatic
+    fun d(message: String, arg1: Int, arg2: Any?) {
+        if (isLoggable(Log.DEBUG)) Timber.d(message, arg1, arg2)
+    }
+
+    @JvmStatic
+    fun d(message: String, arg1: Any?, arg2: Any?, arg3: Any?) {
+        if (isLoggable(Log.DEBUG)) Timber.d(message, arg1, arg2, arg3)
+    }
+
+    @JvmStatic
+    fun i(message: String) {
+        if (isLoggable(Log.INFO)) Timber.i(message)
+    }
+
+    @JvmStatic
+    fun i(message: String, arg: Any?) {
+        if (isLoggable(Log.INFO)) Timber.i(message, arg)
+    }
+}
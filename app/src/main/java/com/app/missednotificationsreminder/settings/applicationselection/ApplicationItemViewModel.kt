@@ -1,32 +1,48 @@
 package com.app.missednotificationsreminder.settings.applicationselection
 
-import com.app.missednotificationsreminder.binding.model.BaseViewStateModel
 import com.squareup.picasso.Picasso
 import com.squareup.picasso.RequestCreator
 import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.channels.SendChannel
 import timber.log.Timber
 
 /**
- * The view model for the single application item
+ * The view model for the single application item. The instance is owned by the view holder and reused for every
+ * item bound to it
  *
- * @property applicationItem                        the current application item
  * @property picasso
- * state changed event
+ * @property checkedStateChanges the channel to deliver the requested checked state changes to the adapter
  */
 @ExperimentalCoroutinesApi
 class ApplicationItemViewModel(
-        private val applicationItem: ApplicationItemViewState,
-        private val picasso: Picasso) : BaseViewStateModel<ApplicationItemViewState, ApplicationItemViewStatePartialChanges>(applicationItem) {
+        private val picasso: Picasso,
+        private val checkedStateChanges: SendChannel<ApplicationItemViewState>) {
+    /**
+     * The currently bound application item
+     */
+    var applicationItem: ApplicationItemViewState? = null
+        private set
+
+    /**
+     * Bind the view model to another application item
+     *
+     * @param applicationItem the application item to bind to
+     */
+    fun bind(applicationItem: ApplicationItemViewState) {
+        this.applicationItem = applicationItem
+    }
 
     /**
      * Get the application icon request
      *
+     * @param applicationItem the application item to get the icon for
      * @return
      */
-    val icon: RequestCreator by lazy {
-        Timber.d("getIcon for %1\$s", toString())
-        picasso.load(applicationItem.iconUri)
-                .fit()
+    fun icon(applicationItem: ApplicationItemViewState?): RequestCreator? {
+        return applicationItem?.let {
+            picasso.load(it.iconUri)
+                    .fit()
+        }
     }
 
     /**
@@ -35,10 +51,10 @@ class ApplicationItemViewModel(
      */
     fun onItemClicked() {
         Timber.d("onItemClicked for %1\$s", toString())
-        process(ApplicationItemViewStatePartialChanges.CheckedStateChange(!_viewState.value.checked))
+        applicationItem?.let { checkedStateChanges.offer(it.copy(checked = !it.checked)) }
     }
 
     override fun toString(): String {
-        return "ApplicationItemViewModel: state = ${_viewState.value}"
+        return "ApplicationItemViewModel: state = $applicationItem"
     }
-}
\ No newline at end of file
+}
@@ -1,21 +1,20 @@
 package com.app.missednotificationsreminder.settings.applicationselection
 
+import android.os.SystemClock
 import android.view.LayoutInflater
 import android.view.ViewGroup
-import androidx.lifecycle.asLiveData
 import androidx.lifecycle.lifecycleScope
 import androidx.recyclerview.widget.RecyclerView
 import androidx.recyclerview.widget.SortedList
 import androidx.recyclerview.widget.SortedListAdapterCallback
 import com.app.missednotificationsreminder.databinding.ItemSelectableApplicationBinding
-import com.app.missednotificationsreminder.di.qualifiers.SelectedApplications
+import com.app.missednotificationsreminder.data.source.SelectedApplicationsDataSource
 import com.app.missednotificationsreminder.service.data.model.NotificationData
 import com.app.missednotificationsreminder.ui.widget.recyclerview.LifecycleAdapter
 import com.app.missednotificationsreminder.ui.widget.recyclerview.LifecycleViewHolder
 import com.squareup.picasso.Picasso
-import com.tfcporciuncula.flow.Preference
-import kotlinx.coroutines.ExperimentalCoroutinesApi
-import kotlinx.coroutines.Job
+import kotlinx.coroutines.*
+import kotlinx.coroutines.channels.Channel
 import kotlinx.coroutines.flow.*
 import timber.log.Timber
 import javax.inject.Inject
@@ -26,21 +25,12 @@ import javax.inject.Inject
  */
 @ExperimentalCoroutinesApi
 class ApplicationsSelectionAdapter @Inject constructor(
-        @param:SelectedApplications private val selectedApplications: Preference<Set<String>>,
+        private val selectedApplications: SelectedApplicationsDataSource,
         notificationDataFlow: Flow<@JvmSuppressWildcards List<NotificationData>>,
         private val picasso: Picasso) : LifecycleAdapter<ApplicationsSelectionAdapter.ViewHolder>() {
     private val data = SortedList(ApplicationItemViewState::class.java, object : SortedListAdapterCallback<ApplicationItemViewState>(this) {
         override fun compare(t0: ApplicationItemViewState, t1: ApplicationItemViewState): Int {
-            if (t0.activeNotifications != t1.activeNotifications) {
-                return t1.activeNotifications - t0.activeNotifications
-            }
-            return if (t0.checked != t1.checked) {
-                if (t0.checked) -1 else 1
-            } else getLabel(t0).compareTo(getLabel(t1), ignoreCase = true)
-        }
-
-        fun getLabel(item: ApplicationItemViewState): String {
-            return item.applicationName.toString()
+            return ITEMS_COMPARATOR.compare(t0, t1)
         }
 
         override fun areContentsTheSame(oldItem: ApplicationItemViewState,
@@ -53,10 +43,58 @@ class ApplicationsSelectionAdapter @Inject constructor(
         }
     })
 
+    /**
+     * The latest known active notifications count per package, applied to the data set in [setData]
+     */
+    private var notificationsCountInfo: Map<String, Int>? = null
+
+    /**
+     * The package name to the currently displayed item index. Positions shift on every re-sort so the index keeps the
+     * items, which are located in the [SortedList] with the binary search
+     */
+    private var itemsIndex = HashMap<String, ApplicationItemViewState>()
+
+    /**
+     * The scope for the data updates which should survive view detaching, cancelled in [shutdown]
+     */
+    private val updateScope = MainScope()
+
+    private var setDataJob: Job? = null
+
+    /**
+     * The checked state changes requested by the items, handled by the single adapter level collector
+     */
+    private val checkedStateChanges = Channel<ApplicationItemViewState>(Channel.UNLIMITED)
+
+    /**
+     * Replace the adapter data. The new data is prepared and sorted in background, then merged into the current data
+     * on the main thread so only the changed rows are notified
+     *
+     * @param data the new data
+     */
     fun setData(data: List<ApplicationItemViewState>) {
-        this.data.clear()
-        this.data.addAll(data)
-        notifyDataSetChanged()
+        val notificationsCountInfo = notificationsCountInfo
+        setDataJob?.cancel()
+        setDataJob = updateScope.launch {
+            val (items, index) = withContext(Dispatchers.Default) {
+                val items = Array(data.size) { i ->
+                    val item = data[i]
+                    // the loaded data may carry outdated counts, e.g. when it is filtered later by the search query
+                    val count = notificationsCountInfo?.let { it[item.packageName] ?: 0 } ?: item.activeNotifications
+                    if (item.activeNotifications == count) item else item.copy(activeNotifications = count)
+                }.apply { sortWith(ITEMS_COMPARATOR) }
+                items to items.associateByTo(HashMap(items.size)) { it.packageName }
+            }
+            val start = SystemClock.elapsedRealtime()
+            // the input is already sorted so the SortedList only merges it with the current items
+            this@ApplicationsSelectionAdapter.data.replaceAll(items, true)
+            itemsIndex = index
+            Timber.d("setData: merged %1\$d items in %2\$d", items.size, SystemClock.elapsedRealtime() - start)
+            // counts may be changed while the data was prepared in background
+            this@ApplicationsSelectionAdapter.notificationsCountInfo
+                    ?.takeIf { it !== notificationsCountInfo }
+                    ?.let { updateNotificationsCount(notificationsCountInfo, it) }
+        }
     }
 
     override fun onCreateViewHolder(viewGroup: ViewGroup, i: Int): ViewHolder {
@@ -74,66 +112,39 @@ class ApplicationsSelectionAdapter @Inject constructor(
     }
 
     fun shutdown() {
+        updateScope.cancel()
+        checkedStateChanges.close()
     }
 
     /**
      * View holder implementation for this adapter
      */
     inner class ViewHolder(var binding: ItemSelectableApplicationBinding) : LifecycleViewHolder(binding.root, lifecycle) {
-        var job: Job? = null
-        lateinit var model: ApplicationItemViewModel
+        private val model = ApplicationItemViewModel(picasso, checkedStateChanges)
 
         init {
-            binding.lifecycleOwner = this@ViewHolder
+            binding.model = model
         }
 
         fun bindTo(item: ApplicationItemViewState) {
-            model = ApplicationItemViewModel(item, picasso)
-            binding.viewState = model.viewState.asLiveData()
-            binding.model = model
-            job = lifecycleScope.launchWhenCreated {
-                try {
-                    attachListeners(model)
-                } finally {
-                    Timber.d("ViewHolder job is canceled")
-                }
-            }
+            model.bind(item)
+            binding.viewState = item
+            binding.executePendingBindings()
         }
+    }
 
-        override fun onAttached() {
-            super.onAttached()
-            if (!job!!.isActive) {
-                job = lifecycleScope.launchWhenCreated {
-                    attachListeners(model)
-                }
+    companion object {
+        /**
+         * The items order: with active notifications first, then checked, then by label
+         */
+        private val ITEMS_COMPARATOR = Comparator<ApplicationItemViewState> { t0, t1 ->
+            when {
+                t0.activeNotifications != t1.activeNotifications -> t1.activeNotifications - t0.activeNotifications
+                t0.checked != t1.checked -> if (t0.checked) -1 else 1
+                else -> t0.applicationName.toString().compareTo(t1.applicationName.toString(), ignoreCase = true)
             }
         }
 
-        private suspend fun attachListeners(model: ApplicationItemViewModel) {
-            Timber.d("attachListeners")
-            model.viewState
-                    .drop(1)
-                    .distinctUntilChanged { old, new -> old.checked == new.checked }
-                    .onEach { applicationItem ->
-                        data.updateItemAt(adapterPosition, applicationItem)
-                        Timber.d("Update selected application value %1\$s to %2\$b", applicationItem.packageName, applicationItem.checked)
-                        // for sure we may use if condition here instead of concatenation of 2 observables. Just wanted to achieve
-                        // same result with RxJava usage.
-                        selectedApplications.get()
-                                .let {
-                                    val updatedSet = it.toMutableSet()
-                                    if (applicationItem.checked)
-                                        updatedSet.add(applicationItem.packageName)
-                                    else
-                                        updatedSet.remove(applicationItem.packageName)
-                                    selectedApplications.set(updatedSet.toSet())
-                                }
-                    }
-                    .collect()
-        }
-    }
-
-    companion object {
         fun getNotificationCountData(notificationData: List<NotificationData>): Map<String, Int> {
             return notificationData.groupingBy { it.packageName }
                     .eachCount()
@@ -142,26 +153,79 @@ class ApplicationsSelectionAdapter @Inject constructor(
 
     init {
         setHasStableIds(false)
+        checkedStateChanges
+                .consumeAsFlow()
+                .onEach { applicationItem ->
+                    // the displayed item may have newer notifications count than the bound one
+                    itemsIndex[applicationItem.packageName]
+                            ?.let { updateItem(it, it.copy(checked = applicationItem.checked)) }
+                    Timber.d("Update selected application value %1\$s to %2\$b", applicationItem.packageName, applicationItem.checked)
+                    selectedApplications.setSelected(applicationItem.packageName, applicationItem.checked)
+                }
+                .launchIn(updateScope)
         notificationDataFlow
                 .conflate()
                 .onEach { notificationData ->
                     val notificationsCountInfo = getNotificationCountData(notificationData)
-                    while (true) {
-                        var found = false
-                        for (i in 0 until data.size()) {
-                            val item = data[i]
-                            val count = notificationsCountInfo[item.packageName] ?: 0
-                            if (item.activeNotifications != count) {
-                                data.updateItemAt(i, item.copy(activeNotifications = count))
-                                found = true
-                                break
-                            }
-                        }
-                        if (!found) {
-                            break
-                        }
-                    }
+                    val previousNotificationsCountInfo = this@ApplicationsSelectionAdapter.notificationsCountInfo
+                    this@ApplicationsSelectionAdapter.notificationsCountInfo = notificationsCountInfo
+                    updateNotificationsCount(previousNotificationsCountInfo, notificationsCountInfo)
                 }
                 .launchIn(lifecycleScope)
     }
+
+    /**
+     * Update the active notifications count of the displayed items. Only the packages which count differs between
+     * the previous and the new data are touched, all the changes are applied within a single batch
+     *
+     * @param previousNotificationsCountInfo the active notifications count per package the items were updated with,
+     * null if unknown
+     * @param notificationsCountInfo         the new active notifications count per package
+     */
+    private fun updateNotificationsCount(previousNotificationsCountInfo: Map<String, Int>?,
+                                         notificationsCountInfo: Map<String, Int>) {
+        val changedPackages: Collection<String> = if (previousNotificationsCountInfo == null) {
+            itemsIndex.keys.toList()
+        } else {
+            HashSet<String>().apply {
+                notificationsCountInfo.forEach { (packageName, count) ->
+                    if (previousNotificationsCountInfo[packageName] != count) add(packageName)
+                }
+                previousNotificationsCountInfo.keys.forEach { packageName ->
+                    if (packageName !in notificationsCountInfo) add(packageName)
+                }
+            }
+        }
+        if (changedPackages.isEmpty()) {
+            return
+        }
+        data.beginBatchedUpdates()
+        try {
+            for (packageName in changedPackages) {
+                val item = itemsIndex[packageName] ?: continue
+                val count = notificationsCountInfo[packageName] ?: 0
+                if (item.activeNotifications != count) {
+                    updateItem(item, item.copy(activeNotifications = count))
+                }
+            }
+        } finally {
+            data.endBatchedUpdates()
+        }
+    }
+
+    /**
+     * Replace the displayed item and keep the items index in sync
+     *
+     * @param item    the currently displayed item
+     * @param newItem the item to display instead
+     */
+    private fun updateItem(item: ApplicationItemViewState, newItem: ApplicationItemViewState) {
+        val position = data.indexOf(item)
+        if (position == SortedList.INVALID_POSITION) {
+            Timber.w("updateItem: item for %1\$s is not found", item.packageName)
+            return
+        }
+        data.updateItemAt(position, newItem)
+        itemsIndex[newItem.packageName] = newItem
+    }
 }
\ No newline at end of file
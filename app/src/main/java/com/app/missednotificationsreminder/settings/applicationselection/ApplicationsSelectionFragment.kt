@@ -55,6 +55,7 @@ class ApplicationsSelectionFragment : CommonFragmentWithViewBinding<FragmentAppl
     private fun init() {
         // Set the lifecycle owner to the lifecycle of the view
         viewDataBinding.lifecycleOwner = this.viewLifecycleOwner
+        viewDataBinding.viewModel = viewModel
 
         viewDataBinding.list.layoutManager = LinearLayoutManager(context)
         viewDataBinding.list.adapter = adapter
@@ -74,7 +75,8 @@ class ApplicationsSelectionFragment : CommonFragmentWithViewBinding<FragmentAppl
             is LoadingStatus.Error -> viewDataBinding.animator.setDisplayedChild(viewDataBinding.error)
             is LoadingStatus.NotStarted -> {
                 viewDataBinding.animator.setDisplayedChild(
-                        if (viewState.data.isEmpty()) viewDataBinding.empty
+                        // keep the list visible when nothing matches the search query
+                        if (viewState.data.isEmpty() && viewState.query.isEmpty()) viewDataBinding.empty
                         else viewDataBinding.list)
                 adapter.setData(viewState.data)
             }
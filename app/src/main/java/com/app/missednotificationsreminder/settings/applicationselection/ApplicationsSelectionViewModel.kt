@@ -1,30 +1,62 @@
 package com.app.missednotificationsreminder.settings.applicationselection
 
-import android.content.pm.PackageManager
-import android.net.Uri
+import android.os.SystemClock
 import androidx.lifecycle.viewModelScope
 import com.app.missednotificationsreminder.binding.model.BaseViewStateModel
 import com.app.missednotificationsreminder.binding.model.ViewStatePartialChanges
-import com.app.missednotificationsreminder.di.qualifiers.SelectedApplications
+import com.app.missednotificationsreminder.data.source.SelectedApplicationsDataSource
 import com.app.missednotificationsreminder.service.data.model.NotificationData
 import com.app.missednotificationsreminder.settings.applicationselection.data.model.util.ApplicationIconHandler
-import com.tfcporciuncula.flow.Preference
+import com.app.missednotificationsreminder.settings.applicationselection.data.model.util.ApplicationsSearchIndex
+import com.app.missednotificationsreminder.settings.applicationselection.data.source.ApplicationsCatalogDataSource
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.FlowPreview
 import kotlinx.coroutines.flow.*
 import timber.log.Timber
 import java.util.*
+import java.util.concurrent.TimeUnit
 import javax.inject.Inject
 
 /**
  * The view model for the applications selection view
  */
+@FlowPreview
 @ExperimentalCoroutinesApi
 class ApplicationsSelectionViewModel @Inject constructor(
-        @param:SelectedApplications private val selectedApplicationsPref: Preference<Set<String>>,
+        private val selectedApplications: SelectedApplicationsDataSource,
         private val notificationDataFlow: Flow<@JvmSuppressWildcards List<NotificationData>>,
-        private val packageManager: PackageManager) :
+        private val applicationsCatalog: ApplicationsCatalogDataSource) :
         BaseViewStateModel<ViewState, ViewStatePartialChanges<ViewState>>(ViewState(LoadingStatus.NotStarted, Collections.emptyList())) {
+    /**
+     * The loaded applications with the search index built over them
+     */
+    private val indexedData = MutableStateFlow<IndexedData?>(null)
+
+    /**
+     * The current search query
+     */
+    private val query = MutableStateFlow("")
+
+    init {
+        indexedData
+                .filterNotNull()
+                .combine(query) { data, query -> filterData(data, query) }
+                .flowOn(Dispatchers.Default)
+                .onEach { (data, query) ->
+                    _viewState.apply { value = value.copy(loadingStatus = LoadingStatus.NotStarted, data = data, query = query) }
+                }
+                .launchIn(viewModelScope)
+    }
+
+    /**
+     * Filter the displayed applications by the label or package name
+     *
+     * @param query the search query
+     */
+    fun search(query: String) {
+        this.query.value = query
+    }
 
     /**
      * Load the application data to the view
@@ -37,41 +69,87 @@ class ApplicationsSelectionViewModel @Inject constructor(
             return
         }
         _viewState.apply { value = value.copy(loadingStatus = LoadingStatus.Loading) }
+        val start = SystemClock.elapsedRealtime()
+        var firstItemReported = false
         notificationDataFlow
                 .take(1)
                 .map { ApplicationsSelectionAdapter.getNotificationCountData(it) }
-                .map { notificationsCountInfo ->
-                    val result: MutableList<ApplicationItemViewState> = ArrayList()
-                    val packages = packageManager.getInstalledPackages(0)
-                    val selectedApplications = selectedApplicationsPref.get()
-                    for (packageInfo in packages) {
-                        val selected = selectedApplications.contains(packageInfo.packageName)
-                        result.add(ApplicationItemViewState(
-                                checked = selected,
-                                applicationName = packageInfo.applicationInfo.loadLabel(packageManager),
-                                packageName = packageInfo.packageName,
-                                activeNotifications = notificationsCountInfo[packageInfo.packageName]
-                                        ?: 0,
-                                iconUri = Uri.Builder()
-                                        .scheme(ApplicationIconHandler.SCHEME)
-                                        .authority(packageInfo.packageName)
-                                        .build()))
+                .flatMapConcat { notificationsCountInfo ->
+                    flow {
+                        // render the persisted catalog immediately and reconcile it with installed packages after
+                        applicationsCatalog.cached()
+                                .takeIf { it.isNotEmpty() }
+                                ?.let { emit(it) }
+                        emitAll(applicationsCatalog.reconcile())
                     }
-                    result.toList()
+                            .distinctUntilChanged()
+                            .conflate()
+                            .map { entries ->
+                                entries.map { entry ->
+                                    ApplicationItemViewState(
+                                            checked = selectedApplications.isSelected(entry.packageName),
+                                            applicationName = entry.label,
+                                            packageName = entry.packageName,
+                                            activeNotifications = notificationsCountInfo[entry.packageName]
+                                                    ?: 0,
+                                            iconUri = ApplicationIconHandler.iconUri(entry.packageName, entry.versionCode))
+                                }
+                            }
                 }
                 .flowOn(Dispatchers.IO)
+                .map { data ->
+                    val indexStart = SystemClock.elapsedRealtime()
+                    IndexedData(data, ApplicationsSearchIndex(data.map { it.applicationName }, data.map { it.packageName }))
+                            .also { Timber.d("loadData: index built for %1\$d items in %2\$d", data.size, SystemClock.elapsedRealtime() - indexStart) }
+                }
+                .flowOn(Dispatchers.Default)
                 .catch { t ->
                     Timber.e(t, "Unexpected error")
-                    _viewState.apply { value = value.copy(loadingStatus = LoadingStatus.Error) }
+                    // keep showing the cached catalog if it is already rendered
+                    _viewState.apply {
+                        value = value.copy(loadingStatus =
+                        if (value.data.isEmpty()) LoadingStatus.Error else LoadingStatus.NotStarted)
+                    }
                 }
                 .onEach {
-                    _viewState.apply { value = value.copy(loadingStatus = LoadingStatus.NotStarted, data = it) }
+                    if (!firstItemReported && it.data.isNotEmpty()) {
+                        firstItemReported = true
+                        Timber.d("loadData: time to first item %d", SystemClock.elapsedRealtime() - start)
+                    }
+                    indexedData.value = it
+                }
+                .onCompletion { t ->
+                    if (t == null) {
+                        Timber.d("loadData: time to complete %d", SystemClock.elapsedRealtime() - start)
+                    }
                 }
                 .launchIn(viewModelScope)
     }
+
+    private fun filterData(indexedData: IndexedData, query: String): Pair<List<ApplicationItemViewState>, String> {
+        val start = System.nanoTime()
+        val found = indexedData.index.search(query)
+        val result = ArrayList<ApplicationItemViewState>(found.size)
+        for (i in found) {
+            val item = indexedData.data[i]
+            // the checked state may be changed in the list after data is loaded
+            val checked = selectedApplications.isSelected(item.packageName)
+            result.add(if (item.checked == checked) item else item.copy(checked = checked))
+        }
+        Timber.d("filterData: found %1\$d items for query \"%2\$s\" in %3\$d us",
+                result.size, query, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start))
+        return result to query
+    }
+
+    private class IndexedData(val data: List<ApplicationItemViewState>, val index: ApplicationsSearchIndex)
 }
 
-data class ViewState(val loadingStatus: LoadingStatus, val data: List<ApplicationItemViewState>)
+/**
+ * @property loadingStatus The applications loading status
+ * @property data The applications to display
+ * @property query The search query the data is filtered with
+ */
+data class ViewState(val loadingStatus: LoadingStatus, val data: List<ApplicationItemViewState>, val query: String = "")
 
 sealed class LoadingStatus {
     object NotStarted : LoadingStatus()
@@ -0,0 +1,16 @@
+package com.app.missednotificationsreminder.settings.applicationselection.data.model
+
+/**
+ * The persisted installed application information used to render the applications selection list without querying
+ * the package manager
+ *
+ * @property packageName The application package name
+ * @property label The application label
+ * @property versionCode The application version code
+ * @property lastUpdateTime The time the application was last updated, used to detect changes on reconciliation
+ */
+data class ApplicationCatalogEntry(
+        val packageName: String,
+        val label: String,
+        val versionCode: Long,
+        val lastUpdateTime: Long)
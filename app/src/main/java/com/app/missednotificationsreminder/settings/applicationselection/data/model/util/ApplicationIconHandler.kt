@@ -2,30 +2,67 @@ package com.app.missednotificationsreminder.settings.applicationselection.data.m
 
 import android.content.pm.PackageManager
 import android.graphics.Bitmap
+import android.graphics.BitmapFactory
 import android.graphics.Canvas
+import android.net.Uri
+import androidx.core.content.pm.PackageInfoCompat
 import com.squareup.picasso.Picasso
 import com.squareup.picasso.Request
 import com.squareup.picasso.RequestHandler
 import timber.log.Timber
+import java.io.File
+import java.io.FileOutputStream
 
 /**
- * The application icon picasso handler
+ * The application icon picasso handler. Icons are rendered once at the requested target size and stored in the
+ * disk cache keyed by package name, version code and size, so following loads only decode the small cached file.
+ *
+ * @property mPackageManager the package manager to load application icons with
+ * @property mCacheDir the directory to store rendered icons in
  */
-class ApplicationIconHandler(private val mPackageManager: PackageManager) : RequestHandler() {
+class ApplicationIconHandler(
+        private val mPackageManager: PackageManager,
+        private val mCacheDir: File) : RequestHandler() {
     override fun canHandleRequest(data: Request): Boolean {
         return SCHEME == data.uri.scheme
     }
 
     override fun load(request: Request, networkPolicy: Int): Result? {
-        return getAppIcon(request.uri.host)?.let {
+        val packageName = request.uri.host ?: return null
+        val versionCode = request.uri.getQueryParameter(VERSION_CODE_PARAMETER)?.toLongOrNull()
+                ?: getVersionCode(packageName)
+                ?: return null
+        val cachedFile = File(mCacheDir, cachedFileName(packageName, versionCode, request.targetWidth, request.targetHeight))
+        if (cachedFile.exists()) {
+            BitmapFactory.decodeFile(cachedFile.path)?.let {
+                return Result(it, Picasso.LoadedFrom.DISK)
+            }
+        }
+        return getAppIcon(packageName, request.targetWidth, request.targetHeight)?.let {
+            store(packageName, cachedFile, it)
             Result(it, Picasso.LoadedFrom.DISK)
         }
     }
 
-    private fun getAppIcon(packageName: String?): Bitmap? {
+    private fun getVersionCode(packageName: String): Long? {
+        return try {
+            PackageInfoCompat.getLongVersionCode(mPackageManager.getPackageInfo(packageName, 0))
+        } catch (e: PackageManager.NameNotFoundException) {
+            Timber.e(e)
+            null
+        }
+    }
+
+    /**
+     * Render the application icon to the bitmap of the specified size. Intrinsic drawable size is used if target
+     * size is not specified
+     */
+    private fun getAppIcon(packageName: String, targetWidth: Int, targetHeight: Int): Bitmap? {
         try {
             return mPackageManager.getApplicationIcon(packageName)?.let { drawable ->
-                val bitmap = Bitmap.createBitmap(drawable.intrinsicWidth, drawable.intrinsicHeight, Bitmap.Config.ARGB_8888)
+                val width = if (targetWidth > 0) targetWidth else drawable.intrinsicWidth
+                val height = if (targetHeight > 0) targetHeight else drawable.intrinsicHeight
+                val bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888)
                 val canvas = Canvas(bitmap)
                 drawable.setBounds(0, 0, canvas.width, canvas.height)
                 drawable.draw(canvas)
@@ -37,8 +74,73 @@ class ApplicationIconHandler(private val mPackageManager: PackageManager) : Requ
         return null
     }
 
+    /**
+     * Store the rendered icon to the disk cache replacing icons cached for the previous package versions
+     */
+    private fun store(packageName: String, cachedFile: File, bitmap: Bitmap) {
+        try {
+            if (!mCacheDir.exists() && !mCacheDir.mkdirs()) {
+                Timber.w("Can't create icons cache directory %s", mCacheDir)
+                return
+            }
+            val versionPrefix = cachedFile.name.substringBeforeLast('_') + "_"
+            mCacheDir.listFiles { _, name -> packageNameOf(name) == packageName && !name.startsWith(versionPrefix) }
+                    ?.forEach { it.delete() }
+            val tmp = File(mCacheDir, cachedFile.name + ".tmp")
+            FileOutputStream(tmp).use { bitmap.compress(Bitmap.CompressFormat.PNG, 100, it) }
+            if (!tmp.renameTo(cachedFile)) {
+                tmp.delete()
+            }
+        } catch (e: Exception) {
+            Timber.e(e)
+        }
+    }
+
     companion object {
         const val SCHEME = "appicon"
+
+        /**
+         * The optional icon URI query parameter with the application version code
+         */
+        const val VERSION_CODE_PARAMETER = "versionCode"
+
+        private const val CACHED_FILE_EXTENSION = ".png"
+
+        /**
+         * Get the name of the cached icon file in the `<package name>_<version code>_<width>x<height>.png` format
+         */
+        internal fun cachedFileName(packageName: String, versionCode: Long, width: Int, height: Int): String {
+            return "${packageName}_${versionCode}_${width}x${height}$CACHED_FILE_EXTENSION"
+        }
+
+        /**
+         * Get the package name from the cached icon file name. Package names may contain `_` but the
+         * version code and size parts may not, so the name is split at the last two separators
+         *
+         * @return the package name or null if the name is not the cached icon file name
+         */
+        internal fun packageNameOf(fileName: String): String? {
+            if (!fileName.endsWith(CACHED_FILE_EXTENSION)) {
+                return null
+            }
+            val sizeSeparator = fileName.lastIndexOf('_')
+            val versionSeparator = if (sizeSeparator > 0) fileName.lastIndexOf('_', sizeSeparator - 1) else -1
+            return if (versionSeparator > 0) fileName.substring(0, versionSeparator) else null
+        }
+
+        /**
+         * Build the application icon URI to be handled by this handler
+         *
+         * @param packageName the application package name
+         * @param versionCode the application version code
+         */
+        fun iconUri(packageName: String, versionCode: Long): Uri {
+            return Uri.Builder()
+                    .scheme(SCHEME)
+                    .authority(packageName)
+                    .appendQueryParameter(VERSION_CODE_PARAMETER, versionCode.toString())
+                    .build()
+        }
     }
 
-}
\ No newline at end of file
+}
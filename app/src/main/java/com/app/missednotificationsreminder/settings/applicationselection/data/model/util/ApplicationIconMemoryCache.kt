@@ -0,0 +1,48 @@
+package com.app.missednotificationsreminder.settings.applicationselection.data.model.util
+
+import android.graphics.Bitmap
+import android.util.LruCache
+import com.squareup.picasso.Cache
+
+/**
+ * The picasso memory cache sized explicitly in bytes for the application icon thumbnails. Evicted bitmaps are not
+ * reused as they may be still displayed.
+ */
+class ApplicationIconMemoryCache(maxSizeBytes: Int) : Cache {
+    private val cache = object : LruCache<String, Bitmap>(maxSizeBytes) {
+        override fun sizeOf(key: String, value: Bitmap): Int {
+            return value.byteCount
+        }
+    }
+
+    override fun get(key: String): Bitmap? = cache.get(key)
+
+    override fun set(key: String, bitmap: Bitmap) {
+        cache.put(key, bitmap)
+    }
+
+    override fun size(): Int = cache.size()
+
+    override fun maxSize(): Int = cache.maxSize()
+
+    override fun clear() {
+        cache.evictAll()
+    }
+
+    override fun clearKeyUri(keyPrefix: String) {
+        for (key in cache.snapshot().keys) {
+            if (key.startsWith(keyPrefix)) {
+                cache.remove(key)
+            }
+        }
+    }
+
+    val hitCount: Int
+        get() = cache.hitCount()
+
+    val missCount: Int
+        get() = cache.missCount()
+
+    val evictionCount: Int
+        get() = cache.evictionCount()
+}
@@ -0,0 +1,109 @@
+package com.app.missednotificationsreminder.settings.applicationselection.data.model.util
+
+import java.util.*
+
+/**
+ * The in-memory search index over the application labels and package names. All queries match the case insensitive
+ * substrings of the label or the package name. Every substring up to [TRIGRAM_LENGTH] long is indexed, so queries
+ * not longer than that are resolved with the single postings lookup, longer queries are resolved by intersecting
+ * trigram postings and verifying the remaining candidates with a substring check.
+ *
+ * @param labels       the application labels, the document id is the position in the list
+ * @param packageNames the application package names in the same order as labels
+ */
+class ApplicationsSearchIndex(labels: List<CharSequence>, packageNames: List<String>) {
+    /**
+     * The normalized searchable text of each document
+     */
+    private val texts: Array<String> = Array(labels.size) { i ->
+        normalize(labels[i]) + SEPARATOR + normalize(packageNames[i])
+    }
+
+    /**
+     * The substring up to trigram long to sorted document ids mapping
+     */
+    private val ngrams = HashMap<String, IntArray>()
+
+    val size: Int
+        get() = texts.size
+
+    init {
+        val postings = HashMap<String, MutableList<Int>>()
+        for ((document, text) in texts.withIndex()) {
+            for (i in text.indices) {
+                for (end in i + 1..minOf(i + TRIGRAM_LENGTH, text.length)) {
+                    if (text[end - 1] == SEPARATOR) break
+                    val list = postings.getOrPut(text.substring(i, end)) { ArrayList(4) }
+                    // documents are added in ascending order so only the last one needs to be checked for duplicates
+                    if (list.isEmpty() || list[list.size - 1] != document) {
+                        list.add(document)
+                    }
+                }
+            }
+        }
+        for ((ngram, list) in postings) {
+            ngrams[ngram] = list.toIntArray()
+        }
+    }
+
+    /**
+     * Search the documents matching the query
+     *
+     * @param query the search query
+     * @return the sorted ids of the matching documents, all the documents for the blank query
+     */
+    fun search(query: CharSequence): IntArray {
+        val normalized = normalize(query).trim()
+        return when {
+            normalized.isEmpty() -> IntArray(texts.size) { it }
+            normalized.length <= TRIGRAM_LENGTH -> ngrams[normalized]?.copyOf() ?: IntArray(0)
+            else -> searchTrigrams(normalized)
+        }
+    }
+
+    private fun searchTrigrams(query: String): IntArray {
+        // start intersection from the rarest trigram to keep candidates list minimal
+        var candidates: IntArray? = null
+        val postings = ArrayList<IntArray>(query.length - TRIGRAM_LENGTH + 1)
+        for (i in 0..query.length - TRIGRAM_LENGTH) {
+            postings.add(ngrams[query.substring(i, i + TRIGRAM_LENGTH)] ?: return IntArray(0))
+        }
+        postings.sortBy { it.size }
+        for (posting in postings) {
+            candidates = if (candidates == null) posting else intersect(candidates, posting)
+            if (candidates.isEmpty()) return candidates
+        }
+        // trigrams may be present at the non adjacent positions so verify the candidates
+        return candidates!!.filter { texts[it].contains(query) }.toIntArray()
+    }
+
+    companion object {
+        private const val TRIGRAM_LENGTH = 3
+
+        /**
+         * The separator between label and package name which doesn't match any query
+         */
+        private const val SEPARATOR = '\u0000'
+
+        private fun normalize(value: CharSequence) = value.toString().toLowerCase(Locale.getDefault())
+
+        private fun intersect(first: IntArray, second: IntArray): IntArray {
+            val result = IntArray(minOf(first.size, second.size))
+            var i = 0
+            var j = 0
+            var count = 0
+            while (i < first.size && j < second.size) {
+                when {
+                    first[i] < second[j] -> i++
+                    first[i] > second[j] -> j++
+                    else -> {
+                        result[count++] = first[i]
+                        i++
+                        j++
+                    }
+                }
+            }
+            return result.copyOf(count)
+        }
+    }
+}
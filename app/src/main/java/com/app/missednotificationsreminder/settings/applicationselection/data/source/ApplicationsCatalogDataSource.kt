@@ -0,0 +1,315 @@
+package com.app.missednotificationsreminder.settings.applicationselection.data.source
+
+import android.app.Application
+import android.content.BroadcastReceiver
+import android.content.Context
+import android.content.Intent
+import android.content.IntentFilter
+import android.content.pm.PackageInfo
+import android.content.pm.PackageManager
+import android.os.SystemClock
+import androidx.core.content.pm.PackageInfoCompat
+import com.app.missednotificationsreminder.settings.applicationselection.data.model.ApplicationCatalogEntry
+import kotlinx.coroutines.*
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.channelFlow
+import kotlinx.coroutines.selects.select
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import okio.buffer
+import okio.sink
+import okio.source
+import okio.ByteString.Companion.encodeUtf8
+import timber.log.Timber
+import java.io.File
+import java.io.IOException
+import java.util.*
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * The persisted catalog of the installed applications. The catalog is stored in the application private files
+ * directory, so the applications selection view may render it immediately. The catalog is refreshed incrementally
+ * from the package broadcasts and reconciled with the package manager by comparing the packages last update time,
+ * so labels are loaded only for the new or updated applications.
+ */
+@Singleton
+class ApplicationsCatalogDataSource @Inject constructor(
+        private val app: Application,
+        private val packageManager: PackageManager) {
+    private val mutex = Mutex()
+
+    /**
+     * The loaded catalog entries mapped by package name, null if not yet read from disk
+     */
+    private var entries: MutableMap<String, ApplicationCatalogEntry>? = null
+
+    /**
+     * The locale the [entries] labels are loaded for
+     */
+    private var entriesLocale: String? = null
+
+    /**
+     * The scope of the updates started by the broadcasts, lives as long as the application process
+     */
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+
+    private val file by lazy { File(app.filesDir, FILE_NAME) }
+
+    /**
+     * The bounded pool used to resolve application labels in parallel
+     */
+    private val labelsDispatcher by lazy {
+        val counter = AtomicInteger()
+        Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()) { runnable ->
+            Thread(runnable, "ApplicationsCatalog-${counter.incrementAndGet()}")
+        }.asCoroutineDispatcher()
+    }
+
+    /**
+     * Get the catalog entries known from the previous runs without querying the package manager
+     *
+     * @return the cached entries or empty list if catalog was never reconciled
+     */
+    suspend fun cached(): List<ApplicationCatalogEntry> = mutex.withLock {
+        loadedEntries().values.toList()
+    }
+
+    /**
+     * Reconcile the catalog with the currently installed packages. Labels are resolved only for the packages
+     * added or updated since the last reconciliation. Resolution is split into pages which run in parallel on the
+     * [labelsDispatcher] and the catalog snapshot is emitted each time a page completes, so the first items may be
+     * rendered before all the labels are resolved
+     *
+     * @return the flow of the catalog snapshots, the last one is the fully reconciled catalog
+     */
+    fun reconcile(): Flow<List<ApplicationCatalogEntry>> = channelFlow {
+        mutex.withLock {
+            val start = SystemClock.elapsedRealtime()
+            val entries = loadedEntries()
+            val packages = packageManager.getInstalledPackages(0)
+            val installed = HashSet<String>(packages.size * 2)
+            val changed = ArrayList<PackageInfo>()
+            for (packageInfo in packages) {
+                installed.add(packageInfo.packageName)
+                val existing = entries[packageInfo.packageName]
+                if (existing == null ||
+                        existing.lastUpdateTime != packageInfo.lastUpdateTime ||
+                        existing.versionCode != PackageInfoCompat.getLongVersionCode(packageInfo)) {
+                    changed.add(packageInfo)
+                }
+            }
+            val removed = entries.keys.retainAll(installed)
+            if (changed.isEmpty()) {
+                send(entries.values.toList())
+            } else {
+                val pending = changed.chunked(PAGE_SIZE)
+                        .map { page ->
+                            async(labelsDispatcher) { page.map { entryOf(it) } }
+                        }
+                        .toMutableList()
+                // select the pages in completion order so the first resolved page is emitted as soon as possible
+                while (pending.isNotEmpty()) {
+                    val page = select<Deferred<List<ApplicationCatalogEntry>>> {
+                        for (deferred in pending) {
+                            deferred.onAwait { deferred }
+                        }
+                    }
+                    pending.remove(page)
+                    for (entry in page.await()) {
+                        entries[entry.packageName] = entry
+                    }
+                    send(entries.values.toList())
+                }
+            }
+            if (changed.isNotEmpty() || removed) {
+                persist(entries)
+            }
+            Timber.d("reconcile: updated %1\$d, removed %2\$b, total %3\$d, duration %4\$d",
+                    changed.size, removed, entries.size, SystemClock.elapsedRealtime() - start)
+        }
+    }
+
+    /**
+     * Start monitoring package and locale changes broadcasts to keep the catalog actual between reconciliations.
+     * Should be called once for the application process
+     */
+    fun monitorPackageChanges() {
+        app.registerReceiver(PackageChangesReceiver(), IntentFilter().apply {
+            addAction(Intent.ACTION_PACKAGE_ADDED)
+            addAction(Intent.ACTION_PACKAGE_REMOVED)
+            addAction(Intent.ACTION_PACKAGE_REPLACED)
+            addDataScheme("package")
+        })
+        app.registerReceiver(LocaleChangedReceiver(), IntentFilter(Intent.ACTION_LOCALE_CHANGED))
+    }
+
+    /**
+     * Drop the loaded entries such as their labels are localized for the previous locale. The catalog persisted
+     * for the previous locale is ignored on read, so all the labels are loaded on the next reconciliation
+     */
+    private suspend fun invalidate() = mutex.withLock {
+        entries = null
+        entriesLocale = null
+    }
+
+    /**
+     * Update the catalog entry for the single package
+     *
+     * @param packageName the changed package name
+     */
+    private suspend fun update(packageName: String) = mutex.withLock {
+        val entries = loadedEntries()
+        if (entries.isEmpty()) {
+            // the catalog is not yet reconciled, all the packages will be loaded on first reconciliation
+            return@withLock
+        }
+        val packageInfo = try {
+            packageManager.getPackageInfo(packageName, 0)
+        } catch (e: PackageManager.NameNotFoundException) {
+            null
+        }
+        if (packageInfo == null) {
+            entries.remove(packageName)
+        } else {
+            entries[packageName] = entryOf(packageInfo)
+        }
+        Timber.d("update: package %1\$s, installed %2\$b", packageName, packageInfo != null)
+        persist(entries)
+    }
+
+    private fun entryOf(packageInfo: PackageInfo): ApplicationCatalogEntry {
+        return ApplicationCatalogEntry(
+                packageName = packageInfo.packageName,
+                label = packageInfo.applicationInfo.loadLabel(packageManager).toString(),
+                versionCode = PackageInfoCompat.getLongVersionCode(packageInfo),
+                lastUpdateTime = packageInfo.lastUpdateTime)
+    }
+
+    private fun loadedEntries(): MutableMap<String, ApplicationCatalogEntry> {
+        val locale = locale()
+        val entries = entries
+        if (entries != null && entriesLocale == locale) {
+            return entries
+        }
+        // the locale may change before the broadcast is received
+        return read(locale).also {
+            this.entries = it
+            entriesLocale = locale
+        }
+    }
+
+    /**
+     * Read the catalog from disk. Catalog written for another locale is ignored such as labels are localized
+     */
+    private fun read(locale: String): MutableMap<String, ApplicationCatalogEntry> {
+        val result = HashMap<String, ApplicationCatalogEntry>()
+        if (!file.exists()) {
+            return result
+        }
+        try {
+            file.source().buffer().use { source ->
+                if (source.readInt() != FORMAT_VERSION || source.readString() != locale) {
+                    Timber.d("read: catalog is outdated")
+                    return result
+                }
+                repeat(source.readInt()) {
+                    val entry = ApplicationCatalogEntry(
+                            packageName = source.readString(),
+                            label = source.readString(),
+                            versionCode = source.readLong(),
+                            lastUpdateTime = source.readLong())
+                    result[entry.packageName] = entry
+                }
+            }
+        } catch (e: IOException) {
+            Timber.e(e, "Failed to read the applications catalog")
+            result.clear()
+        }
+        return result
+    }
+
+    /**
+     * Persist the entries together with the locale their labels are loaded for, which may differ from the current
+     * one if the locale changed while the entries were updated
+     */
+    private fun persist(entries: Map<String, ApplicationCatalogEntry>) {
+        val locale = entriesLocale ?: return
+        val tmp = File(file.parentFile, "$FILE_NAME.tmp")
+        try {
+            tmp.sink().buffer().use { sink ->
+                sink.writeInt(FORMAT_VERSION)
+                sink.writeString(locale)
+                sink.writeInt(entries.size)
+                for (entry in entries.values) {
+                    sink.writeString(entry.packageName)
+                    sink.writeString(entry.label)
+                    sink.writeLong(entry.versionCode)
+                    sink.writeLong(entry.lastUpdateTime)
+                }
+            }
+            if (!tmp.renameTo(file)) {
+                throw IOException("Can't rename $tmp to $file")
+            }
+        } catch (e: IOException) {
+            Timber.e(e, "Failed to persist the applications catalog")
+            tmp.delete()
+        }
+    }
+
+    private fun locale() = Locale.getDefault().toString()
+
+    private fun okio.BufferedSink.writeString(value: String) {
+        val bytes = value.encodeUtf8()
+        writeInt(bytes.size)
+        write(bytes)
+    }
+
+    private fun okio.BufferedSource.readString(): String {
+        return readByteString(readInt().toLong()).utf8()
+    }
+
+    /**
+     * The broadcast receiver for the package added, removed and replaced events
+     */
+    private inner class PackageChangesReceiver : BroadcastReceiver() {
+        override fun onReceive(context: Context, intent: Intent) {
+            val packageName = intent.data?.schemeSpecificPart ?: return
+            if (intent.action == Intent.ACTION_PACKAGE_REMOVED && intent.getBooleanExtra(Intent.EXTRA_REPLACING, false)) {
+                // the package replaced event will follow
+                return
+            }
+            Timber.d("onReceive: %1\$s for %2\$s", intent.action, packageName)
+            val result = goAsync()
+            scope.launch {
+                try {
+                    update(packageName)
+                } finally {
+                    result.finish()
+                }
+            }
+        }
+    }
+
+    /**
+     * The broadcast receiver for the locale changed events
+     */
+    private inner class LocaleChangedReceiver : BroadcastReceiver() {
+        override fun onReceive(context: Context, intent: Intent) {
+            Timber.d("onReceive: locale changed to %s", locale())
+            scope.launch { invalidate() }
+        }
+    }
+
+    companion object {
+        private const val FILE_NAME = "applications_catalog"
+        private const val FORMAT_VERSION = 1
+
+        /**
+         * The number of packages resolved in one parallel task, about a screen of the applications list
+         */
+        private const val PAGE_SIZE = 12
+    }
+}
@@ -18,4 +18,39 @@ fun <T> debounce(
             destinationFunction(param)
         }
     }
-}
\ No newline at end of file
+}
+
+/**
+ * The debounce which adapts the wait time to the call rate. The wait time is doubled up to the
+ * [maxWaitMs] when the call arrives before the current wait time elapses since the previous call and
+ * is halved down to the [minWaitMs] otherwise, so bursts of calls are collapsed into fewer invocations
+ * while the single calls are handled quickly
+ *
+ * @param currentTimeMs the monotonic time source in milliseconds
+ */
+fun <T> adaptiveDebounce(
+        minWaitMs: Long,
+        maxWaitMs: Long,
+        coroutineScope: CoroutineScope,
+        currentTimeMs: () -> Long = { System.nanoTime() / 1_000_000 },
+        destinationFunction: (T) -> Unit
+): (T) -> Unit {
+    var debounceJob: Job? = null
+    var waitMs = minWaitMs
+    var lastCallTime: Long? = null
+    return { param: T ->
+        val time = currentTimeMs()
+        val previousCallTime = lastCallTime
+        waitMs = if (previousCallTime != null && time - previousCallTime < waitMs) {
+            minOf(maxWaitMs, waitMs * 2)
+        } else {
+            maxOf(minWaitMs, waitMs / 2)
+        }
+        lastCallTime = time
+        debounceJob?.cancel()
+        debounceJob = coroutineScope.launch {
+            delay(waitMs)
+            destinationFunction(param)
+        }
+    }
+}
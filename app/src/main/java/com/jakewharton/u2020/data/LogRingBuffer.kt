@@ -0,0 +1,126 @@
+package com.jakewharton.u2020.data
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+
+/**
+ * The preallocated ring buffer of log records. Each record is packed into the parallel primitive arrays (time,
+ * level, interned tag id) plus the message template and arguments references, so writing a record allocates
+ * nothing. Producers claim the slots with a single atomic increment and publish them by writing the record sequence
+ * to the slot, no locks are taken on the write path. Readers detect the records which are not yet published or
+ * already overwritten by checking the slot sequence before and after reading.
+ *
+ * @param capacity the maximum number of the stored records, the oldest records are overwritten
+ */
+internal class LogRingBuffer(val capacity: Int) {
+    /**
+     * The sequence of the next record to write
+     */
+    private val head = AtomicLong()
+
+    /**
+     * The sequence of the record published in the slot, [UNPUBLISHED] while the slot is written
+     */
+    private val published = AtomicLongArray(capacity).apply {
+        for (i in 0 until capacity) set(i, UNPUBLISHED)
+    }
+    private val times = LongArray(capacity)
+    private val levels = ByteArray(capacity)
+    private val tagIds = IntArray(capacity)
+    private val messages = arrayOfNulls<String>(capacity)
+    private val arguments = arrayOfNulls<Array<out Any?>>(capacity)
+
+    private val tagIdsByName = ConcurrentHashMap<String, Int>()
+
+    /**
+     * Id to tag mapping. Only grows, guarded by the buffer monitor for writes
+     */
+    @Volatile
+    private var tags = arrayOfNulls<String>(INITIAL_TAGS_CAPACITY)
+
+    /**
+     * The sequence of the next record to write, all the records before it are either published or being written
+     */
+    val sequence: Long
+        get() = head.get()
+
+    /**
+     * The sequence of the oldest record which is not yet overwritten
+     */
+    val oldestSequence: Long
+        get() = maxOf(0, head.get() - capacity)
+
+    /**
+     * Write the record
+     *
+     * @param time    the record time in milliseconds since epoch
+     * @param level   the log priority
+     * @param tag     the log tag
+     * @param message the log message or the message template if arguments are specified
+     * @param args    the captured message arguments to format the message with on read
+     */
+    fun write(time: Long, level: Int, tag: String, message: String, args: Array<out Any?>? = null) {
+        val sequence = head.getAndIncrement()
+        val index = (sequence % capacity).toInt()
+        published.set(index, UNPUBLISHED)
+        times[index] = time
+        levels[index] = level.toByte()
+        tagIds[index] = tagIdsByName[tag] ?: intern(tag)
+        messages[index] = message
+        arguments[index] = args
+        // volatile write makes the record fields visible to the readers which observe the sequence
+        published.set(index, sequence)
+    }
+
+    /**
+     * Read the record with the specified sequence
+     *
+     * @param sequence the record sequence
+     * @return the log entry or null if record is not yet published or already overwritten
+     */
+    fun read(sequence: Long): LumberYard.Entry? {
+        val index = (sequence % capacity).toInt()
+        if (published.get(index) != sequence) {
+            return null
+        }
+        val time = times[index]
+        val level = levels[index].toInt()
+        val tag = tags[tagIds[index]] ?: ""
+        val message = messages[index]
+        val args = arguments[index]
+        // the slot may be overwritten by producer while the fields are read
+        if (published.get(index) != sequence || message == null) {
+            return null
+        }
+        return LumberYard.Entry(time, level, tag, message, args)
+    }
+
+    /**
+     * Check whether the record with the specified sequence is claimed by producer but not yet published
+     *
+     * @param sequence the record sequence
+     */
+    fun isPending(sequence: Long): Boolean {
+        return sequence < head.get() &&
+                sequence >= oldestSequence &&
+                published.get((sequence % capacity).toInt()) < sequence
+    }
+
+    @Synchronized
+    private fun intern(tag: String): Int {
+        tagIdsByName[tag]?.let { return it }
+        val id = tagIdsByName.size
+        if (id == tags.size) {
+            tags = tags.copyOf(id * 2)
+        }
+        tags[id] = tag
+        tagIdsByName[tag] = id
+        return id
+    }
+
+    companion object {
+        private const val UNPUBLISHED = -1L
+        private const val INITIAL_TAGS_CAPACITY = 64
+    }
+}
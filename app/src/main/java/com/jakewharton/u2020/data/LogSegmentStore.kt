@@ -0,0 +1,323 @@
+package com.jakewharton.u2020.data
+
+import android.util.Log
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.util.*
+
+/**
+ * The persistent log store of the fixed size segment files written through the memory mapped
+ * buffers, so the written records survive the process death without explicit flushing. When the
+ * current segment is full the next one is started and the oldest segments above [maxSegments]
+ * are deleted.
+ *
+ * Each record is stored as the record length followed by the tag, time, level, message template
+ * and the typed template arguments. The length is written last so the record interrupted by the
+ * process death is ignored on read.
+ *
+ * @param directory   the directory to store segments in
+ * @param segmentSize the size of the single segment file in bytes
+ * @param maxSegments the maximum number of the segment files to keep
+ */
+internal class LogSegmentStore(
+        private val directory: File,
+        private val segmentSize: Int,
+        private val maxSegments: Int) {
+    /**
+     * The indexes of the existing segments, from oldest to newest
+     */
+    private val segmentIndexes = ArrayDeque<Long>()
+
+    /**
+     * The memory mapped buffer of the newest segment positioned at the end of the written records
+     */
+    private var segment: MappedByteBuffer? = null
+
+    private var opened = false
+
+    /**
+     * The reusable buffer to encode the record in before it is copied to the segment
+     */
+    private var scratch = ByteBuffer.allocate(INITIAL_SCRATCH_SIZE)
+
+    /**
+     * Append the entry to the store
+     *
+     * @param entry the entry to append
+     */
+    @Synchronized
+    fun write(entry: LumberYard.Entry) {
+        try {
+            var record = encode(entry)
+            if (record.remaining() > segmentSize - Int.SIZE_BYTES) {
+                // too large to fit the segment, store the truncated formatted message instead
+                record = encode(LumberYard.Entry(entry.timeMillis, entry.level, entry.tag,
+                        entry.message.take(segmentSize / MAX_UTF8_CHAR_SIZE / 2)))
+            }
+            val length = record.remaining()
+            var segment = currentSegment() ?: return
+            if (segment.remaining() < Int.SIZE_BYTES + length) {
+                segment = startSegment(segmentIndexes.peekLast()!! + 1)
+            }
+            val start = segment.position()
+            segment.position(start + Int.SIZE_BYTES)
+            segment.put(record)
+            // publish the record
+            segment.putInt(start, length)
+        } catch (e: IOException) {
+            // Timber can't be used here as it would log back into the store
+            Log.e(TAG, "Failed to write log entry", e)
+            segment = null
+        }
+    }
+
+    /**
+     * Encode the record body to the [scratch] buffer. The message template and arguments are stored
+     * as is so the message is formatted only when it is read.
+     *
+     * @return the scratch buffer ready to be read
+     */
+    private fun encode(entry: LumberYard.Entry): ByteBuffer {
+        scratch.clear()
+        val tag = entry.tag.toByteArray(Charsets.UTF_8)
+        putBytes(tag.copyOf(minOf(tag.size, Short.MAX_VALUE.toInt())), true)
+        ensureCapacity(Long.SIZE_BYTES + 1)
+        scratch.putLong(entry.timeMillis)
+        scratch.put(entry.level.toByte())
+        putBytes(entry.template.toByteArray(Charsets.UTF_8), false)
+        val args = entry.args ?: emptyArray()
+        ensureCapacity(1)
+        scratch.put(minOf(args.size, MAX_ARGS).toByte())
+        for (i in 0 until minOf(args.size, MAX_ARGS)) {
+            when (val arg = args[i]) {
+                null -> putType(TYPE_NULL, 0)
+                is Int -> putType(TYPE_INT, Int.SIZE_BYTES).putInt(arg)
+                is Long -> putType(TYPE_LONG, Long.SIZE_BYTES).putLong(arg)
+                is Double -> putType(TYPE_DOUBLE, Long.SIZE_BYTES).putDouble(arg)
+                is Float -> putType(TYPE_FLOAT, Int.SIZE_BYTES).putFloat(arg)
+                is Boolean -> putType(TYPE_BOOLEAN, 1).put(if (arg) 1 else 0)
+                is Char -> putType(TYPE_CHAR, Char.SIZE_BYTES).putChar(arg)
+                is Short -> putType(TYPE_SHORT, Short.SIZE_BYTES).putShort(arg)
+                is Byte -> putType(TYPE_BYTE, 1).put(arg)
+                else -> {
+                    putType(TYPE_STRING, 0)
+                    putBytes(arg.toString().toByteArray(Charsets.UTF_8), false)
+                }
+            }
+        }
+        scratch.flip()
+        return scratch
+    }
+
+    private fun putType(type: Byte, size: Int): ByteBuffer {
+        ensureCapacity(1 + size)
+        return scratch.put(type)
+    }
+
+    private fun putBytes(bytes: ByteArray, shortLength: Boolean) {
+        ensureCapacity(Int.SIZE_BYTES + bytes.size)
+        if (shortLength) scratch.putShort(bytes.size.toShort()) else scratch.putInt(bytes.size)
+        scratch.put(bytes)
+    }
+
+    private fun ensureCapacity(size: Int) {
+        if (scratch.remaining() < size) {
+            scratch = ByteBuffer.allocate(maxOf(scratch.capacity() * 2, scratch.position() + size))
+                    .put(scratch.flip() as ByteBuffer)
+        }
+    }
+
+    /**
+     * Read all the stored entries from oldest to newest. The segments are read one by one so the
+     * whole history is never held in memory by the store
+     *
+     * @param action the action to call for each entry
+     */
+    @Synchronized
+    fun forEach(action: (LumberYard.Entry) -> Unit) {
+        try {
+            currentSegment()
+        } catch (e: IOException) {
+            Log.e(TAG, "Failed to open log segments", e)
+        }
+        for (index in segmentIndexes) {
+            val buffer = if (index == segmentIndexes.peekLast()) {
+                segment?.duplicate()?.apply { position(0) }
+            } else {
+                try {
+                    map(segmentFile(index), FileChannel.MapMode.READ_ONLY)
+                } catch (e: IOException) {
+                    Log.e(TAG, "Failed to read log segment $index", e)
+                    null
+                }
+            } ?: continue
+            readRecords(buffer, action)
+        }
+    }
+
+    /**
+     * Get the newest segment opening the existing ones on first call
+     */
+    private fun currentSegment(): MappedByteBuffer? {
+        if (!opened) {
+            opened = true
+            if (!directory.isDirectory && !directory.mkdirs()) {
+                throw IOException("Can't create $directory")
+            }
+            directory.listFiles()
+                    ?.mapNotNull { SEGMENT_NAME.matchEntire(it.name)?.groupValues?.get(1)?.toLongOrNull() }
+                    ?.sorted()
+                    ?.let { segmentIndexes.addAll(it) }
+            val last = segmentIndexes.peekLast()
+            if (last == null) {
+                startSegment(0)
+            } else {
+                segment = map(segmentFile(last), FileChannel.MapMode.READ_WRITE).apply {
+                    // continue after the last complete record
+                    readRecords(this) {}
+                }
+            }
+        }
+        return segment
+    }
+
+    private fun startSegment(index: Long): MappedByteBuffer {
+        val file = segmentFile(index)
+        file.delete()
+        return map(file, FileChannel.MapMode.READ_WRITE).also {
+            segment = it
+            segmentIndexes.addLast(index)
+            while (segmentIndexes.size > maxSegments) {
+                segmentFile(segmentIndexes.removeFirst()).delete()
+            }
+        }
+    }
+
+    private fun map(file: File, mode: FileChannel.MapMode): MappedByteBuffer {
+        return RandomAccessFile(file, if (mode == FileChannel.MapMode.READ_ONLY) "r" else "rw").use {
+            if (mode != FileChannel.MapMode.READ_ONLY && it.length() != segmentSize.toLong()) {
+                it.setLength(segmentSize.toLong())
+            }
+            // the mapping stays valid after the file is closed
+            it.channel.map(mode, 0, it.length())
+        }
+    }
+
+    private fun segmentFile(index: Long) = File(directory, String.format(Locale.US, "segment-%010d.seg", index))
+
+    companion object {
+        private const val TAG = "LogSegmentStore"
+
+        private const val INITIAL_SCRATCH_SIZE = 1024
+        private const val MAX_UTF8_CHAR_SIZE = 3
+        private const val MAX_ARGS = Byte.MAX_VALUE.toInt()
+
+        private const val TYPE_NULL: Byte = 0
+        private const val TYPE_INT: Byte = 1
+        private const val TYPE_LONG: Byte = 2
+        private const val TYPE_DOUBLE: Byte = 3
+        private const val TYPE_FLOAT: Byte = 4
+        private const val TYPE_BOOLEAN: Byte = 5
+        private const val TYPE_CHAR: Byte = 6
+        private const val TYPE_SHORT: Byte = 7
+        private const val TYPE_BYTE: Byte = 8
+        private const val TYPE_STRING: Byte = 9
+
+        private val SEGMENT_NAME = Regex("segment-(\\d+)\\.seg")
+
+        /**
+         * Read the complete records from the buffer position, the buffer is left positioned after
+         * the last complete record. Reading stops at the first invalid record such as the one
+         * partially overwritten or corrupted on disk
+         */
+        private fun readRecords(buffer: ByteBuffer, action: (LumberYard.Entry) -> Unit) {
+            while (buffer.remaining() >= Int.SIZE_BYTES) {
+                val start = buffer.position()
+                val length = buffer.getInt(start)
+                if (length <= 0 || length > buffer.remaining() - Int.SIZE_BYTES) {
+                    break
+                }
+                val record = buffer.duplicate()
+                record.position(start + Int.SIZE_BYTES)
+                record.limit(start + Int.SIZE_BYTES + length)
+                val entry = readRecord(record) ?: break
+                action(entry)
+                buffer.position(start + Int.SIZE_BYTES + length)
+            }
+        }
+
+        /**
+         * Read the record body limited by the buffer limit
+         *
+         * @return the entry or null if the record is invalid
+         */
+        private fun readRecord(record: ByteBuffer): LumberYard.Entry? {
+            if (record.remaining() < Short.SIZE_BYTES) return null
+            val tag = readString(record, record.short.toInt()) ?: return null
+            if (record.remaining() < Long.SIZE_BYTES + 1) return null
+            val time = record.long
+            val level = record.get().toInt()
+            if (level < Log.VERBOSE || level > Log.ASSERT) return null
+            val template = readString(record) ?: return null
+            if (!record.hasRemaining()) return null
+            val count = record.get().toInt()
+            if (count < 0) return null
+            val args = arrayOfNulls<Any>(count)
+            for (i in args.indices) {
+                if (!record.hasRemaining()) return null
+                val type = record.get()
+                if (type == TYPE_STRING) {
+                    args[i] = readString(record) ?: return null
+                    continue
+                }
+                val size = when (type) {
+                    TYPE_NULL -> 0
+                    TYPE_INT, TYPE_FLOAT -> Int.SIZE_BYTES
+                    TYPE_LONG, TYPE_DOUBLE -> Long.SIZE_BYTES
+                    TYPE_BOOLEAN, TYPE_BYTE -> 1
+                    TYPE_CHAR, TYPE_SHORT -> Short.SIZE_BYTES
+                    else -> return null
+                }
+                if (record.remaining() < size) return null
+                args[i] = when (type) {
+                    TYPE_INT -> record.int
+                    TYPE_LONG -> record.long
+                    TYPE_DOUBLE -> record.double
+                    TYPE_FLOAT -> record.float
+                    TYPE_BOOLEAN -> record.get() != 0.toByte()
+                    TYPE_CHAR -> record.char
+                    TYPE_SHORT -> record.short
+                    TYPE_BYTE -> record.get()
+                    else -> null
+                }
+            }
+            // the written records are read completely
+            if (record.hasRemaining()) return null
+            return LumberYard.Entry(time, level, tag, template, args.takeIf { it.isNotEmpty() })
+        }
+
+        /**
+         * Read the string prefixed with the int length
+         *
+         * @return the string or null if the length is invalid
+         */
+        private fun readString(buffer: ByteBuffer): String? {
+            if (buffer.remaining() < Int.SIZE_BYTES) return null
+            return readString(buffer, buffer.int)
+        }
+
+        /**
+         * Read the string of the specified length
+         *
+         * @return the string or null if the length is invalid
+         */
+        private fun readString(buffer: ByteBuffer, length: Int): String? {
+            if (length < 0 || length > buffer.remaining()) return null
+            return String(ByteArray(length).also { buffer.get(it) }, Charsets.UTF_8)
+        }
+    }
+}
@@ -3,13 +3,17 @@ package com.jakewharton.u2020.data
 import android.app.Application
 import android.util.Log
 import kotlinx.coroutines.*
-import kotlinx.coroutines.channels.BroadcastChannel
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.asFlow
+import kotlinx.coroutines.flow.flatMapConcat
 import kotlinx.coroutines.flow.flow
+import okio.Sink
 import okio.buffer
+import okio.gzip
 import okio.sink
+import org.threeten.bp.Instant
 import org.threeten.bp.LocalDateTime
+import org.threeten.bp.ZoneId
 import org.threeten.bp.format.DateTimeFormatter
 import org.threeten.bp.format.DateTimeFormatterBuilder
 import org.threeten.bp.temporal.ChronoField
@@ -19,61 +23,235 @@ import java.io.File
 import java.io.IOException
 import java.util.*
 import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicBoolean
 import javax.inject.Inject
 import javax.inject.Singleton
 
 @Singleton
 @OptIn(ExperimentalCoroutinesApi::class, FlowPreview::class)
 class LumberYard @Inject constructor(private val app: Application) {
-    private val entries: Deque<Entry> = ArrayDeque(BUFFER_SIZE + 1)
-    private val entrySubject = BroadcastChannel<Entry>(2000)
+    private val ringBuffer = LogRingBuffer(BUFFER_SIZE)
+
+    /**
+     * The persistent logs history which survives the process death
+     */
+    private val segmentStore by lazy {
+        LogSegmentStore(File(app.filesDir, LOGS_DIRECTORY), SEGMENT_SIZE, MAX_SEGMENTS)
+    }
+
+    /**
+     * The single thread executor which copies the ring buffer records to the [segmentStore]
+     */
+    private val persistExecutor = Executors.newSingleThreadExecutor { runnable -> Thread(runnable, "LumberYard") }
+    private val persistScheduled = AtomicBoolean()
+    private val persistTask = Runnable { persist() }
+
+    /**
+     * The ring buffer sequence all the records before which are already persisted, guarded by the
+     * [segmentStore] monitor
+     */
+    private var persistedSequence = 0L
+
     fun tree(): Timber.Tree {
-        val scope = CoroutineScope(Executors
-                .newSingleThreadExecutor { runnable -> Thread(runnable, "LumberYard") }
-                .asCoroutineDispatcher())
         return object : DebugTree() {
+            /**
+             * The raw message template and arguments of the current log call on this thread, passed
+             * from [formatMessage] to [log] which Timber calls one after another in the same call
+             */
+            private val pendingMessage = object : ThreadLocal<PendingMessage>() {
+                override fun initialValue() = PendingMessage()
+            }
+
+            override fun formatMessage(message: String, args: Array<out Any?>): String {
+                // defer formatting until the entry is displayed or exported. The arguments are
+                // captured first as their toString may log too, which uses and clears the pending
+                // message of the current thread
+                val capturedArgs = captureArguments(args)
+                pendingMessage.get()!!.set(message, capturedArgs)
+                return message
+            }
+
             override fun log(priority: Int, tag: String?, message: String, t: Throwable?) {
-                scope.launch { addEntry(Entry(LocalDateTime.now(), priority, tag ?: "", message)) }
+                val pending = pendingMessage.get()!!
+                try {
+                    var entryMessage = message
+                    var entryArgs: Array<out Any?>? = null
+                    val template = pending.template
+                    val args = pending.args
+                    if (template != null && args != null) {
+                        if (t == null && message === template) {
+                            entryArgs = args
+                        } else if (t != null && message.startsWith(template)) {
+                            // the stack trace is appended to the template, it can't be formatted later
+                            entryMessage = Entry.formatMessage(template, args) + message.substring(template.length)
+                        }
+                    }
+                    // written in place on the logging thread, no locks or per call allocations
+                    ringBuffer.write(System.currentTimeMillis(), priority, tag ?: "", entryMessage, entryArgs)
+                    if (persistScheduled.compareAndSet(false, true)) {
+                        persistExecutor.execute(persistTask)
+                    }
+                } finally {
+                    // never leaks to the following log calls of this thread
+                    pending.clear()
+                }
             }
         }
     }
 
-    @Synchronized
-    private suspend fun addEntry(entry: Entry) {
-        entries.addLast(entry)
-        if (entries.size > BUFFER_SIZE) {
-            entries.removeFirst()
+    /**
+     * The reusable holder of the message template and arguments of the log call being processed
+     */
+    private class PendingMessage {
+        var template: String? = null
+            private set
+        var args: Array<out Any?>? = null
+            private set
+
+        fun set(template: String, args: Array<out Any?>) {
+            this.template = template
+            this.args = args
+        }
+
+        fun clear() {
+            template = null
+            args = null
         }
-        entrySubject.send(entry)
     }
 
+    /**
+     * Copy the new ring buffer records to the persistent store
+     */
+    private fun persist() {
+        // reset before reading so the records written concurrently schedule the next run
+        persistScheduled.set(false)
+        val end = ringBuffer.sequence
+        synchronized(segmentStore) {
+            var sequence = maxOf(persistedSequence, ringBuffer.oldestSequence)
+            while (sequence < end) {
+                val entry = ringBuffer.read(sequence)
+                if (entry == null && ringBuffer.isPending(sequence)) {
+                    // the producer schedules another run once the record is published
+                    break
+                }
+                entry?.let { segmentStore.write(it) }
+                sequence++
+            }
+            persistedSequence = sequence
+        }
+    }
+
+    /**
+     * Get the logs history, including the persisted logs of the previous process runs
+     */
     fun bufferedLogs(): List<Entry> {
-        return ArrayList(entries)
+        val result = ArrayList<Entry>()
+        forEachLog { result.add(it) }
+        return result
     }
 
-    fun logs(): Flow<Entry> {
-        return entrySubject.asFlow()
+    /**
+     * Read the persisted logs segment by segment and then the not yet persisted ring buffer records
+     */
+    private inline fun forEachLog(crossinline action: (Entry) -> Unit) {
+        var sequence: Long
+        synchronized(segmentStore) {
+            segmentStore.forEach { action(it) }
+            sequence = persistedSequence
+        }
+        val end = ringBuffer.sequence
+        sequence = maxOf(sequence, ringBuffer.oldestSequence)
+        while (sequence < end) {
+            // records which are being written or overwritten at the moment are skipped
+            ringBuffer.read(sequence)?.let { action(it) }
+            sequence++
+        }
     }
 
     /**
-     * Save the current logs to disk.
+     * Get the live logs in batches. Each subscriber reads the ring buffer with its own cursor and
+     * keeps at most [capacity] pending entries, the oldest ones are dropped if the subscriber
+     * doesn't keep up, so the log writers are never blocked and memory use stays bounded.
+     *
+     * @param capacity the maximum number of entries in the single batch
+     */
+    fun logBatches(capacity: Int = SUBSCRIBER_CAPACITY): Flow<Batch> = flow {
+        var sequence = ringBuffer.sequence
+        while (true) {
+            val end = ringBuffer.sequence
+            val start = maxOf(sequence, ringBuffer.oldestSequence, end - capacity)
+            var dropped = start - sequence
+            sequence = start
+            val entries = ArrayList<Entry>((end - start).toInt())
+            while (sequence < end) {
+                val entry = ringBuffer.read(sequence)
+                if (entry != null) {
+                    entries.add(entry)
+                } else if (ringBuffer.isPending(sequence)) {
+                    // wait until the record is published
+                    break
+                } else {
+                    // overwritten while being read
+                    dropped++
+                }
+                sequence++
+            }
+            if (entries.isNotEmpty() || dropped > 0) {
+                emit(Batch(entries, dropped))
+            }
+            delay(LIVE_LOGS_POLL_INTERVAL)
+        }
+    }
+
+    /**
+     * Get the live logs. Entries the subscriber doesn't keep up with are dropped silently, use
+     * [logBatches] to track them
+     */
+    fun logs(): Flow<Entry> = logBatches().flatMapConcat { it.entries.asFlow() }
+
+    /**
+     * Write the gzip compressed logs to the sink. The entries are streamed without loading the
+     * whole history to memory.
+     *
+     * @param sink the sink to write to, closed when done
+     */
+    fun export(sink: Sink) {
+        sink.gzip().buffer().use {
+            forEachLog { entry -> it.writeUtf8(entry.prettyPrint()).writeByte('\n'.toInt()) }
+        }
+    }
+
+    /**
+     * Save the current logs to disk as the compressed file. The older exported files are deleted
+     * to keep at most [MAX_EXPORT_FILES] files and [MAX_EXPORTS_SIZE] bytes.
      */
     fun save(): Flow<File> = flow {
         val folder = app.getExternalFilesDir(null)
                 ?: throw IOException("External storage is not mounted.")
-        var fileName = DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(LocalDateTime.now()) + ".txt"
+        var fileName = DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(LocalDateTime.now()) + EXPORT_EXTENSION
         // replace ':' char to avoid file saving issue on some devices
         fileName = fileName.replace(":".toRegex(), "_")
         val output = File(folder, fileName)
-        output.sink().buffer()
-                .use {
-                    val entries = bufferedLogs()
-                    for (entry in entries) {
-                        it.writeUtf8(entry.prettyPrint()).writeByte('\n'.toInt())
-                    }
-                    it.close()
-                    emit(output)
-                }
+        export(output.sink())
+        applyExportsRetention(folder)
+        emit(output)
+    }
+
+    /**
+     * Delete the oldest exported files above the retention limits, the newest file is always kept
+     */
+    private fun applyExportsRetention(folder: File) {
+        val files = folder.listFiles { file -> isExportFile(file) }
+                ?.sortedByDescending { it.lastModified() }
+                ?: return
+        var totalSize = 0L
+        files.forEachIndexed { i, file ->
+            totalSize += file.length()
+            if (i > 0 && (i >= MAX_EXPORT_FILES || totalSize > MAX_EXPORTS_SIZE)) {
+                Timber.d("applyExportsRetention: delete %s", file.name)
+                file.delete()
+            }
+        }
     }
 
     /**
@@ -83,25 +261,97 @@ class LumberYard @Inject constructor(private val app: Application) {
     fun cleanUp() {
         GlobalScope.launch(Dispatchers.IO) {
             Timber.d("cleanUp()")
-            val folder = app.getExternalFilesDir(null)
-            if (folder != null) {
-                val files = folder.listFiles()
-                if (files != null) {
-                    for (file in files) {
-                        if (file.name.endsWith(".log")) {
-                            file.delete()
-                        }
-                    }
-                }
-            }
+            app.getExternalFilesDir(null)
+                    ?.listFiles { file -> isExportFile(file) }
+                    ?.forEach { it.delete() }
         }
     }
 
     companion object {
-        private const val BUFFER_SIZE = 10000
+        /**
+         * The maximum number of the recent entries kept in memory
+         */
+        const val BUFFER_SIZE = 10000
+        private const val LIVE_LOGS_POLL_INTERVAL = 250L
+        private const val SUBSCRIBER_CAPACITY = 2000
+        private const val LOGS_DIRECTORY = "logs"
+        private const val SEGMENT_SIZE = 256 * 1024
+        private const val MAX_SEGMENTS = 16
+        private const val EXPORT_EXTENSION = ".txt.gz"
+        private const val MAX_EXPORT_FILES = 5
+        private const val MAX_EXPORTS_SIZE = 10L * 1024 * 1024
+
+        /**
+         * Check whether the file is the exported logs, including the uncompressed ones saved by
+         * the previous versions
+         */
+        private fun isExportFile(file: File): Boolean {
+            return file.isFile && (file.name.endsWith(EXPORT_EXTENSION) || file.name.endsWith(".txt") ||
+                    file.name.endsWith(".log"))
+        }
+
+        /**
+         * Prepare the log call arguments to be formatted later. Boxed primitives, strings and enums
+         * are kept as is, other arguments may change until formatted so they are converted to
+         * strings right away.
+         *
+         * @param args the log call arguments
+         * @return the arguments safe to keep
+         */
+        internal fun captureArguments(args: Array<out Any?>): Array<out Any?> {
+            @Suppress("UNCHECKED_CAST")
+            var result = args as Array<Any?>
+            for (i in args.indices) {
+                val arg = args[i]
+                if (arg == null || isImmutable(arg)) {
+                    continue
+                }
+                if (result.javaClass != Array<Any?>::class.java) {
+                    // the typed array from Java varargs can't hold strings
+                    result = arrayOf<Any?>(*args)
+                }
+                result[i] = arg.toString()
+            }
+            return result
+        }
+
+        private fun isImmutable(value: Any): Boolean {
+            return value is String || value is Int || value is Long || value is Boolean || value is Double ||
+                    value is Float || value is Char || value is Short || value is Byte || value is Enum<*>
+        }
     }
 
-    data class Entry(val time: LocalDateTime, val level: Int, val tag: String, val message: String) {
+    /**
+     * The batch of the live log entries
+     *
+     * @property entries the new log entries
+     * @property dropped the number of entries dropped by the subscriber since the previous batch
+     */
+    class Batch(val entries: List<Entry>, val dropped: Long)
+
+    /**
+     * The log entry. The message is formatted from the template and arguments on first access.
+     *
+     * @property timeMillis the entry time in milliseconds since epoch
+     * @property level      the log priority
+     * @property tag        the log tag
+     * @property template   the message template or the message itself if there are no arguments
+     * @property args       the captured message arguments
+     */
+    class Entry(
+            val timeMillis: Long,
+            val level: Int,
+            val tag: String,
+            val template: String,
+            val args: Array<out Any?>? = null) {
+        val message: String by lazy(LazyThreadSafetyMode.PUBLICATION) { formatMessage(template, args) }
+
+        @Volatile
+        private var cachedDisplayTime: String? = null
+
+        val time: LocalDateTime
+            get() = LocalDateTime.ofInstant(Instant.ofEpochMilli(timeMillis), ZoneId.systemDefault())
+
         fun prettyPrint(): String {
             return String.format("%s %22s %s %s", displayTime(), tag, displayLevel(),  // Indent newlines to match the original indentation.
                     message.replace("\\n".toRegex(), "\n                         "))
@@ -120,10 +370,38 @@ class LumberYard @Inject constructor(private val app: Application) {
         }
 
         fun displayTime(): String {
-            return formatter.format(time)
+            // cached as the entries are displayed and filtered many times
+            return cachedDisplayTime ?: formatter.format(time).also { cachedDisplayTime = it }
+        }
+
+        override fun equals(other: Any?): Boolean {
+            return other is Entry && timeMillis == other.timeMillis && level == other.level &&
+                    tag == other.tag && message == other.message
+        }
+
+        override fun hashCode(): Int {
+            return Objects.hash(timeMillis, level, tag, message)
+        }
+
+        override fun toString(): String {
+            return "Entry(timeMillis=$timeMillis, level=$level, tag=$tag, message=$message)"
         }
 
         companion object {
+            /**
+             * Format the message the same way as [Timber.Tree] does
+             */
+            fun formatMessage(template: String, args: Array<out Any?>?): String {
+                if (args.isNullOrEmpty()) {
+                    return template
+                }
+                return try {
+                    String.format(template, *args)
+                } catch (e: IllegalFormatException) {
+                    "$template ${args.contentToString()}"
+                }
+            }
+
             val formatter: DateTimeFormatter = DateTimeFormatterBuilder()
                     .appendValue(ChronoField.HOUR_OF_DAY, 2).appendLiteral(':')
                     .appendValue(ChronoField.MINUTE_OF_HOUR, 2).optionalStart()
@@ -131,6 +409,5 @@ class LumberYard @Inject constructor(private val app: Application) {
                     .optionalStart().appendFraction(ChronoField.NANO_OF_SECOND, 3, 3, true)
                     .toFormatter()
         }
-
     }
 }
\ No newline at end of file
@@ -16,6 +16,10 @@ internal class LogAdapter(context: Context?) : BindableAdapter<LumberYard.Entry>
 
     fun addLogs(entries: List<LumberYard.Entry>) {
         logs.addAll(entries)
+        if (logs.size > MAX_LOGS) {
+            // keep the displayed list bounded under sustained log spam
+            logs.subList(0, logs.size - MAX_LOGS).clear()
+        }
         notifyDataSetChanged()
     }
 
@@ -64,6 +68,8 @@ internal class LogAdapter(context: Context?) : BindableAdapter<LumberYard.Entry>
     }
 
     companion object {
+        private const val MAX_LOGS = 10000
+
         @DrawableRes
         fun backgroundForLevel(level: Int): Int {
             return when (level) {
@@ -2,9 +2,7 @@ package com.jakewharton.u2020.ui.logs
 
 import android.content.Context
 import android.content.DialogInterface
-import android.os.SystemClock
 import android.text.Editable
-import android.text.TextUtils
 import android.text.TextWatcher
 import android.view.LayoutInflater
 import android.view.WindowManager
@@ -16,37 +14,42 @@ import androidx.lifecycle.lifecycleScope
 import com.app.missednotificationsreminder.databinding.DebugLogsBinding
 import com.app.missednotificationsreminder.ui.widget.dialog.LifecycleAlertDialog
 import com.app.missednotificationsreminder.util.ShareUtils
-import com.app.missednotificationsreminder.util.flow.bufferTimeout
 import com.jakewharton.u2020.data.LumberYard
 import kotlinx.coroutines.*
 import kotlinx.coroutines.channels.awaitClose
 import kotlinx.coroutines.flow.*
 import timber.log.Timber
-import java.util.*
-import java.util.regex.Pattern
 
 @OptIn(ExperimentalCoroutinesApi::class, FlowPreview::class)
 class LogsDialog(context: Context,
                  private val lumberYard: LumberYard,
                  private val parentLifecycleOwner: LifecycleOwner) : LifecycleAlertDialog(context) {
     private val adapter: LogAdapter = LogAdapter(context)
+    private val filter = LogsFilter(LumberYard.BUFFER_SIZE)
     private val query: EditText
 
     override fun onAttachedToWindow() {
         super.onAttachedToWindow()
         lifecycleScope.launch {
             val data = withContext(Dispatchers.IO) {
-                filterData(query.text, lumberYard.bufferedLogs(), false)
+                filter.add(lumberYard.bufferedLogs())
+                filter.filter(query.text)
             }
             adapter.setLogs(data)
-            lumberYard.logs()
-                    .bufferTimeout(duration = 2000)
-                    .filter { it.isNotEmpty() }
-                    .map { filterData(query.text, it, true) }
-                    .filter { it.isNotEmpty() }
+            var dropped = 0L
+            lumberYard.logBatches()
+                    // index the live entries incrementally
+                    .map { it.dropped to filter.add(it.entries) }
                     .flowOn(Dispatchers.Default)
-                    .buffer()
-                    .onEach { adapter.addLogs(it) }
+                    .onEach { (batchDropped, entries) ->
+                        if (batchDropped > 0) {
+                            dropped += batchDropped
+                            setTitle("Logs ($dropped dropped)")
+                        }
+                        if (entries.isNotEmpty()) {
+                            adapter.addLogs(entries)
+                        }
+                    }
                     .launchIn(lifecycleScope)
             callbackFlow<String> {
                 val listener = object : TextWatcher {
@@ -67,9 +70,9 @@ class LogsDialog(context: Context,
                     query.removeTextChangedListener(listener)
                 }
             }
-                    .debounce(1000)
+                    .debounce(300)
                     .conflate()
-                    .map { filterData(it, lumberYard.bufferedLogs(), false) }
+                    .map { filter.filter(it) }
                     .flowOn(Dispatchers.Default)
                     .onEach { adapter.setLogs(it) }
                     .launchIn(lifecycleScope)
@@ -77,46 +80,6 @@ class LogsDialog(context: Context,
 
     }
 
-    private fun filterData(query: CharSequence, entries: List<LumberYard.Entry>, silent: Boolean): List<LumberYard.Entry> {
-        if (!silent) {
-            Timber.d("filterData() called in thread=${Thread.currentThread().name}")
-        }
-        if (TextUtils.isEmpty(query)) {
-            return entries
-        }
-        if (!silent) {
-            Timber.d("filterData() called with: query = %s;",
-                    query)
-        }
-        val start = SystemClock.elapsedRealtime()
-        val result: MutableList<LumberYard.Entry> = ArrayList()
-        var pattern: Pattern? = null
-        try {
-            pattern = Pattern.compile(query.toString(), Pattern.CASE_INSENSITIVE)
-        } catch (e: Exception) {
-            Timber.e("Invalid pattern: %s", query)
-        }
-        if (pattern != null) {
-            for (entry in entries) {
-                for (value in arrayOf(
-                        entry.displayLevel(),
-                        entry.displayTime(),
-                        entry.tag,
-                        entry.message
-                )) {
-                    if (pattern.matcher(value).find()) {
-                        result.add(entry)
-                        break
-                    }
-                }
-            }
-        }
-        if (!silent) {
-            Timber.d("filterData: duration %d", SystemClock.elapsedRealtime() - start)
-        }
-        return result
-    }
-
     private suspend fun share() {
         lumberYard.save() //
                 .flowOn(Dispatchers.IO)
@@ -0,0 +1,306 @@
+package com.jakewharton.u2020.ui.logs
+
+import com.jakewharton.u2020.data.LumberYard
+import timber.log.Timber
+import java.util.*
+import java.util.regex.Pattern
+import java.util.regex.PatternSyntaxException
+
+/**
+ * The incremental log entries filter. Keeps the last [capacity] added entries, the oldest ones are
+ * evicted together with their index data. Entries are indexed by the trigrams of their level, time,
+ * tag and message as they are added. Plain text queries are matched as case insensitive
+ * substrings: candidates are selected by the intersection of the query trigrams postings and then
+ * verified, the queries shorter than a trigram are verified against every entry. When the query
+ * extends the previous one only the previous result is refined. Queries surrounded with slashes,
+ * such as `/error|warn/`, are matched as regular expressions against each field of every entry.
+ *
+ * @param capacity the maximum number of the kept entries
+ */
+internal class LogsFilter(private val capacity: Int) {
+    /**
+     * The entries ring, the entry with the sequence `s` is stored at `s % capacity`
+     */
+    private val entries = arrayOfNulls<LumberYard.Entry>(capacity)
+
+    /**
+     * The lower case searchable text of each entry stored the same way as [entries]
+     */
+    private val texts = arrayOfNulls<String>(capacity)
+
+    /**
+     * The sequence of the next added entry
+     */
+    private var sequence = 0
+
+    /**
+     * The trigram to the ascending entry sequences mapping
+     */
+    private val postings = HashMap<Long, IntList>()
+
+    private var query = ""
+    private var pattern: Pattern? = null
+
+    /**
+     * The sequences of the entries matching [query], null if all entries match
+     */
+    private var result: IntList? = null
+
+    /**
+     * The number of the entries verified against the query by the last [filter] call
+     */
+    var verifiedCount = 0
+        private set
+
+    /**
+     * The sequence of the oldest kept entry
+     */
+    private val oldestSequence: Int
+        get() = maxOf(0, sequence - capacity)
+
+    /**
+     * Index the new entries evicting the oldest ones above the capacity
+     *
+     * @param newEntries the entries to add
+     * @return the new entries matching the current query
+     */
+    @Synchronized
+    fun add(newEntries: List<LumberYard.Entry>): List<LumberYard.Entry> {
+        val matched = ArrayList<LumberYard.Entry>(minOf(newEntries.size, capacity))
+        // the entries before the last capacity ones would be evicted right away
+        for (i in maxOf(0, newEntries.size - capacity) until newEntries.size) {
+            val entry = newEntries[i]
+            if (sequence >= capacity) {
+                evict(sequence - capacity)
+            }
+            val current = sequence++
+            val text = searchableText(entry)
+            entries[current % capacity] = entry
+            texts[current % capacity] = text
+            forEachTrigram(text) { trigram -> postings.getOrPut(trigram) { IntList() }.addDistinct(current) }
+            if (matches(current)) {
+                result?.add(current)
+                matched.add(entry)
+            }
+        }
+        return matched
+    }
+
+    /**
+     * Drop the oldest entry from the index and the current result. The entry sequence is the
+     * smallest one so it can only be the first in the lists it is added to
+     */
+    private fun evict(evicted: Int) {
+        val index = evicted % capacity
+        forEachTrigram(texts[index]!!) { trigram ->
+            val indexes = postings[trigram]
+            if (indexes != null && indexes.size > 0 && indexes[0] == evicted) {
+                indexes.removeFirst()
+                if (indexes.size == 0) postings.remove(trigram)
+            }
+        }
+        result?.let { if (it.size > 0 && it[0] == evicted) it.removeFirst() }
+        entries[index] = null
+        texts[index] = null
+    }
+
+    /**
+     * Filter the indexed entries
+     *
+     * @param query the plain text or the regular expression query surrounded with slashes
+     * @return the matching entries
+     */
+    @Synchronized
+    fun filter(query: CharSequence): List<LumberYard.Entry> {
+        val start = System.nanoTime()
+        val normalized = query.toString().toLowerCase(Locale.getDefault())
+        val previousQuery = this.query
+        val previousResult = result
+        val previousPattern = pattern
+        pattern = if (isRegex(normalized)) compile(query.substring(1, query.length - 1)) else null
+        this.query = normalized
+        verifiedCount = 0
+        result = when {
+            normalized.isEmpty() -> null
+            pattern != null -> scan(null)
+            previousPattern == null && previousQuery.isNotEmpty() && normalized.contains(previousQuery) -> scan(previousResult)
+            else -> search(normalized)
+        }
+        val count = sequence - oldestSequence
+        Timber.d("filter: %1\$d of %2\$d entries match in %3\$d ms",
+                result?.size ?: count, count, (System.nanoTime() - start) / 1_000_000)
+        return result?.let { result -> List(result.size) { entries[result[it] % capacity]!! } }
+                ?: List(count) { entries[(oldestSequence + it) % capacity]!! }
+    }
+
+    /**
+     * Select the candidates by the index and verify them
+     */
+    private fun search(query: String): IntList {
+        if (query.length < TRIGRAM_LENGTH) {
+            return scan(null)
+        }
+        // intersect starting from the shortest postings
+        val queryPostings = ArrayList<IntList>(query.length)
+        var missing = false
+        forEachTrigram(query) { trigram ->
+            val indexes = postings[trigram]
+            if (indexes == null) missing = true else queryPostings.add(indexes)
+        }
+        if (missing) {
+            return IntList()
+        }
+        queryPostings.sortBy { it.size }
+        var candidates = queryPostings[0]
+        for (i in 1 until queryPostings.size) {
+            if (candidates.size == 0) break
+            candidates = candidates.intersect(queryPostings[i])
+        }
+        return scan(candidates)
+    }
+
+    /**
+     * Verify the entries against the current query
+     *
+     * @param sequences the sequences of the entries to verify, null to verify all
+     */
+    private fun scan(sequences: IntList?): IntList {
+        val result = IntList()
+        if (sequences == null) {
+            for (s in oldestSequence until sequence) {
+                verifiedCount++
+                if (matches(s)) result.add(s)
+            }
+        } else {
+            val oldest = oldestSequence
+            sequences.forEach {
+                if (it >= oldest) {
+                    verifiedCount++
+                    if (matches(it)) result.add(it)
+                }
+            }
+        }
+        return result
+    }
+
+    /**
+     * Check the entry with the sequence against the current query
+     */
+    private fun matches(sequence: Int): Boolean {
+        val pattern = pattern
+        if (pattern == null) {
+            return texts[sequence % capacity]!!.contains(query)
+        }
+        // the regular expression is matched against each field so ^ and $ anchor the field bounds
+        val entry = entries[sequence % capacity]!!
+        return pattern.matcher(entry.displayLevel()).find()
+                || pattern.matcher(entry.displayTime()).find()
+                || pattern.matcher(entry.tag).find()
+                || pattern.matcher(entry.message).find()
+    }
+
+    private fun compile(query: String): Pattern {
+        return try {
+            Pattern.compile(query, Pattern.CASE_INSENSITIVE)
+        } catch (e: PatternSyntaxException) {
+            Timber.e("Invalid pattern: %s", query)
+            MATCH_NOTHING
+        }
+    }
+
+    private class IntList {
+        private var values = IntArray(4)
+
+        /**
+         * The position of the first value, the values before it are removed
+         */
+        private var start = 0
+
+        private var end = 0
+
+        val size: Int
+            get() = end - start
+
+        operator fun get(index: Int) = values[start + index]
+
+        fun add(value: Int) {
+            if (end == values.size) {
+                if (start > values.size / 2) {
+                    // reclaim the space of the removed values
+                    values.copyInto(values, 0, start, end)
+                } else {
+                    values = values.copyInto(IntArray(values.size * 2), 0, start, end)
+                }
+                end -= start
+                start = 0
+            }
+            values[end++] = value
+        }
+
+        /**
+         * Add the value if it is not the last one, values are added in ascending order
+         */
+        fun addDistinct(value: Int) {
+            if (size == 0 || values[end - 1] != value) add(value)
+        }
+
+        fun removeFirst() {
+            start++
+        }
+
+        /**
+         * Get the values present in both ascending lists
+         */
+        fun intersect(other: IntList): IntList {
+            val result = IntList()
+            var i = start
+            var j = other.start
+            while (i < end && j < other.end) {
+                val value = values[i]
+                val otherValue = other.values[j]
+                when {
+                    value < otherValue -> i++
+                    value > otherValue -> j++
+                    else -> {
+                        result.add(value)
+                        i++
+                        j++
+                    }
+                }
+            }
+            return result
+        }
+
+        inline fun forEach(action: (Int) -> Unit) {
+            for (i in start until end) action(values[i])
+        }
+    }
+
+    companion object {
+        private val MATCH_NOTHING = Pattern.compile("(?!)")
+        private const val TRIGRAM_LENGTH = 3
+        private const val FIELD_SEPARATOR = '\u0000'
+
+        private fun isRegex(query: String) = query.length > 2 && query.startsWith('/') && query.endsWith('/')
+
+        private fun searchableText(entry: LumberYard.Entry): String {
+            // fields are separated with the char which can't be a part of the query
+            return "${entry.displayLevel()}$FIELD_SEPARATOR${entry.displayTime()}$FIELD_SEPARATOR${entry.tag}$FIELD_SEPARATOR${entry.message}"
+                    .toLowerCase(Locale.getDefault())
+        }
+
+        /**
+         * Call the action for each trigram packed to long, the trigrams spanning the fields are skipped
+         */
+        private inline fun forEachTrigram(text: String, action: (Long) -> Unit) {
+            for (i in 0..text.length - TRIGRAM_LENGTH) {
+                val c0 = text[i]
+                val c1 = text[i + 1]
+                val c2 = text[i + 2]
+                if (c0 != FIELD_SEPARATOR && c1 != FIELD_SEPARATOR && c2 != FIELD_SEPARATOR) {
+                    action((c0.toLong() shl 32) or (c1.toLong() shl 16) or c2.toLong())
+                }
+            }
+        }
+    }
+}
@@ -3,10 +3,12 @@ package com.app.missednotificationsreminder.service
 import android.annotation.TargetApi
 import android.os.Build
 import android.os.SystemClock
+import android.util.Log
 import android.service.notification.NotificationListenerService
 import android.service.notification.StatusBarNotification
 import androidx.lifecycle.lifecycleScope
 import com.app.missednotificationsreminder.service.data.model.NotificationData
+import com.app.missednotificationsreminder.service.util.ServiceLog
 import kotlinx.coroutines.launch
 import timber.log.Timber
 import java.util.*
@@ -40,7 +42,7 @@ abstract class AbstractReminderNotificationListenerService : NotificationListene
             if (notificationData != null) {
                 snapshotNotifications.remove(notificationData)
             } else {
-                Timber.d("actualizeNotificationData() found new %s", sbn)
+                ServiceLog.d("actualizeNotificationData() found new %s", sbn)
                 addedNotifications.add(sbn)
             }
         }
@@ -59,7 +61,9 @@ abstract class AbstractReminderNotificationListenerService : NotificationListene
                 // fix weird NPE on some devices
                 return@launch
             }
-            Timber.d("onNotificationPosted: for package %1\$s, key %2\$s, when %3\$s", sbn.packageName, notificationKey(sbn), sbn.notification.`when`)
+            if (ServiceLog.isLoggable(Log.DEBUG)) {
+                ServiceLog.d("onNotificationPosted: for package %1\$s, key %2\$s, when %3\$s", sbn.packageName, notificationKey(sbn), sbn.notification.`when`)
+            }
             var notificationData: NotificationData? = findNotificationData(sbn)
             if (notificationData == null) {
                 notificationData = ExtendedNotificationData(sbn)
@@ -74,7 +78,9 @@ abstract class AbstractReminderNotificationListenerService : NotificationListene
                 // fix weird NPE on some devices
                 return@launch
             }
-            Timber.d("onNotificationRemoved: for package %1\$s, key %2\$s, when %3\$s", sbn.packageName, notificationKey(sbn), sbn.notification.`when`)
+            if (ServiceLog.isLoggable(Log.DEBUG)) {
+                ServiceLog.d("onNotificationRemoved: for package %1\$s, key %2\$s, when %3\$s", sbn.packageName, notificationKey(sbn), sbn.notification.`when`)
+            }
             val notificationData: NotificationData? = findNotificationData(sbn)
             if (notificationData == null) {
                 Timber.w("onNotificationRemoved: can't find internal notification data for the status bar notification %s",
@@ -115,7 +121,7 @@ abstract class AbstractReminderNotificationListenerService : NotificationListene
 
     @TargetApi(Build.VERSION_CODES.LOLLIPOP)
     override fun onListenerConnected() {
-        Timber.d("onListenerConnected")
+        ServiceLog.d("onListenerConnected")
         super.onListenerConnected()
         onReady()
     }
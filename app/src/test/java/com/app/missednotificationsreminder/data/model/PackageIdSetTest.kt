@@ -0,0 +1,42 @@
+package com.app.missednotificationsreminder.data.model
+
+import org.junit.Assert.*
+import org.junit.Test
+
+class PackageIdSetTest {
+    @Test
+    fun `Test package ids are dense and stable`() {
+        val first = PackageIdTable.idOf("com.example.first")
+        val second = PackageIdTable.idOf("com.example.second")
+        assertNotEquals(first, second)
+        assertEquals(first, PackageIdTable.idOf("com.example.first"))
+        assertEquals("com.example.second", PackageIdTable.packageNameOf(second))
+        assertNull(PackageIdTable.packageNameOf(PackageIdTable.size))
+    }
+
+    @Test
+    fun `Test membership toggles and counting`() {
+        val set = PackageIdSet()
+        assertTrue(set.isEmpty)
+        assertTrue(set.add(3))
+        assertFalse(set.add(3))
+        assertTrue(set.add(64))
+        assertTrue(set.add(1000))
+        assertEquals(3, set.size)
+        assertTrue(3 in set)
+        assertFalse(4 in set)
+        assertFalse(100_000 in set)
+        assertTrue(set.set(64, false))
+        assertFalse(set.remove(64))
+        assertEquals(listOf(3, 1000), mutableListOf<Int>().apply { set.forEach { add(it) } })
+        assertEquals(set, set.copy().apply { add(100_000); remove(100_000) })
+    }
+
+    @Test
+    fun `Test set creation from package names`() {
+        val set = PackageIdSet.of(listOf("com.example.a", "com.example.b"))
+        assertEquals(2, set.size)
+        assertTrue(PackageIdTable.idOf("com.example.a") in set)
+        assertFalse(PackageIdTable.idOf("com.example.c") in set)
+    }
+}
@@ -0,0 +1,65 @@
+package com.app.missednotificationsreminder.service.util
+
+import android.util.Log
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import timber.log.Timber
+import java.lang.management.ManagementFactory
+
+class ServiceLogTest {
+    private val messages = ArrayList<String>()
+    private val tree = object : Timber.Tree() {
+        override fun log(priority: Int, tag: String?, message: String, t: Throwable?) {
+            messages.add(message)
+        }
+    }
+
+    @Before
+    fun setUp() {
+        Timber.plant(tree)
+    }
+
+    @After
+    fun tearDown() {
+        Timber.uproot(tree)
+        ServiceLog.minLevel = Log.VERBOSE
+    }
+
+    @Test
+    fun `Test messages below minimum level are suppressed`() {
+        ServiceLog.minLevel = Log.INFO
+        ServiceLog.v("verbose %1\$d", 1)
+        ServiceLog.d("debug %1\$s", "arg")
+        ServiceLog.i("info %1\$s", "arg")
+        assertEquals(listOf("info arg"), messages)
+    }
+
+    @Test
+    fun `Test suppressed calls don't allocate`() {
+        ServiceLog.minLevel = Log.INFO
+        val threadMXBean = ManagementFactory.getThreadMXBean() as com.sun.management.ThreadMXBean
+        val threadId = Thread.currentThread().id
+        val arg = Any()
+        for (i in 0 until ITERATIONS) log(i, arg)
+        val start = threadMXBean.getThreadAllocatedBytes(threadId)
+        for (i in 0 until ITERATIONS) log(i, arg)
+        val allocated = threadMXBean.getThreadAllocatedBytes(threadId) - start
+        // the boxing or varargs array would take at least 16 bytes per call
+        assertTrue(allocated < ITERATIONS)
+        assertTrue(messages.isEmpty())
+    }
+
+    private fun log(i: Int, arg: Any) {
+        ServiceLog.v("verbose %1\$d %2\$d %3\$b", i, i + 1, true)
+        ServiceLog.d("debug %1\$d", i)
+        ServiceLog.d("debug %1\$d", i.toLong())
+        ServiceLog.d("debug %1\$d %2\$s", i, arg)
+        ServiceLog.d("debug %1\$s %2\$s %3\$s", arg, arg, arg)
+    }
+
+    companion object {
+        private const val ITERATIONS = 100_000
+    }
+}
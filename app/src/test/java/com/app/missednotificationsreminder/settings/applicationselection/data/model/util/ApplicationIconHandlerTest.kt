@@ -0,0 +1,27 @@
+package com.app.missednotificationsreminder.settings.applicationselection.data.model.util
+
+import org.junit.Assert.*
+import org.junit.Test
+
+class ApplicationIconHandlerTest {
+    @Test
+    fun `Test package name is parsed from cached file name`() {
+        assertEquals("com.example", ApplicationIconHandler.packageNameOf(
+                ApplicationIconHandler.cachedFileName("com.example", 12, 48, 48)))
+        assertEquals("com.example_app", ApplicationIconHandler.packageNameOf(
+                ApplicationIconHandler.cachedFileName("com.example_app", 3, 48, 48)))
+    }
+
+    @Test
+    fun `Test package name prefix of another package doesn't match`() {
+        // icon of the com.example_app package starts with the com.example_ prefix
+        assertEquals("com.example_app", ApplicationIconHandler.packageNameOf("com.example_app_3_48x48.png"))
+    }
+
+    @Test
+    fun `Test other files are not parsed`() {
+        assertNull(ApplicationIconHandler.packageNameOf("com.example_12_48x48.png.tmp"))
+        assertNull(ApplicationIconHandler.packageNameOf("icon.png"))
+        assertNull(ApplicationIconHandler.packageNameOf("_48x48.png"))
+    }
+}
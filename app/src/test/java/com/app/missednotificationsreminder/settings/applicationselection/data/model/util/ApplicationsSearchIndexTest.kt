@@ -0,0 +1,44 @@
+package com.app.missednotificationsreminder.settings.applicationselection.data.model.util
+
+import org.junit.Assert.*
+import org.junit.Test
+
+class ApplicationsSearchIndexTest {
+    private val index = ApplicationsSearchIndex(
+            listOf("Google Maps", "Gmail", "Telegram", "Maps Me"),
+            listOf("com.google.android.apps.maps", "com.google.android.gm", "org.telegram.messenger", "com.mapswithme.maps.pro"))
+
+    @Test
+    fun `Test blank query matches everything`() {
+        assertArrayEquals(intArrayOf(0, 1, 2, 3), index.search(" "))
+    }
+
+    @Test
+    fun `Test short query matches substrings`() {
+        assertArrayEquals(intArrayOf(0, 1, 2), index.search("g"))
+        assertArrayEquals(intArrayOf(0, 1, 3), index.search("Ma"))
+        assertArrayEquals(intArrayOf(0, 1, 2), index.search("le"))
+        assertArrayEquals(intArrayOf(2), index.search("eg"))
+        assertArrayEquals(intArrayOf(2), index.search("egr"))
+        assertArrayEquals(intArrayOf(), index.search("zz"))
+    }
+
+    @Test
+    fun `Test results match substring check for every query length`() {
+        val texts = listOf("google maps\u0000com.google.android.apps.maps", "gmail\u0000com.google.android.gm",
+                "telegram\u0000org.telegram.messenger", "maps me\u0000com.mapswithme.maps.pro")
+        for (query in listOf("e", "le", "leg", "legr", "s.", "ps m", "gm")) {
+            val expected = texts.indices.filter { texts[it].contains(query) }.toIntArray()
+            assertArrayEquals(query, expected, index.search(query))
+        }
+    }
+
+    @Test
+    fun `Test long query matches substrings`() {
+        assertArrayEquals(intArrayOf(2), index.search("legr"))
+        assertArrayEquals(intArrayOf(0, 3), index.search("maps"))
+        assertArrayEquals(intArrayOf(1), index.search("android.gm"))
+        // trigrams of the query are present but not adjacent
+        assertArrayEquals(intArrayOf(), index.search("mapmaps"))
+    }
+}
@@ -0,0 +1,74 @@
+package com.app.missednotificationsreminder.util.coroutines
+
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.test.TestCoroutineScope
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+@ExperimentalCoroutinesApi
+class AdaptiveDebounceTest {
+    private val scope = TestCoroutineScope()
+
+    /**
+     * The invocations as the time they happened at to the passed value
+     */
+    private val invocations = mutableListOf<Pair<Long, Int>>()
+
+    private val debounced = adaptiveDebounce<Int>(MIN_WAIT_MS, MAX_WAIT_MS, scope, { scope.currentTime }) {
+        invocations.add(scope.currentTime to it)
+    }
+
+    @After
+    fun tearDown() {
+        scope.cleanupTestCoroutines()
+    }
+
+    /**
+     * Call the debounced function at the specified times
+     */
+    private fun callAt(vararg times: Long) {
+        for (time in times) {
+            scope.advanceTimeBy(time - scope.currentTime)
+            debounced(time.toInt())
+        }
+    }
+
+    @Test
+    fun `Test burst is handled once with the last value`() {
+        callAt(0, 10, 20, 30, 40, 50)
+        scope.advanceUntilIdle()
+        assertEquals(1, invocations.size)
+        assertEquals(50, invocations.single().second)
+    }
+
+    @Test
+    fun `Test wait time doubles up to maximum`() {
+        // waits 100, 200, 400, 800 and 800 after the calls
+        callAt(0, 50, 100, 150, 200)
+        scope.advanceUntilIdle()
+        assertEquals(listOf(200L + MAX_WAIT_MS to 200), invocations)
+    }
+
+    @Test
+    fun `Test wait time halves down to minimum`() {
+        callAt(0, 50, 100, 150, 200)
+        scope.advanceUntilIdle()
+        invocations.clear()
+        // the calls after the wait time elapsed wait 400, 200, 100 and 100
+        callAt(5000)
+        scope.advanceUntilIdle()
+        callAt(10000)
+        scope.advanceUntilIdle()
+        callAt(15000)
+        scope.advanceUntilIdle()
+        callAt(20000)
+        scope.advanceUntilIdle()
+        assertEquals(listOf(5400L to 5000, 10200L to 10000, 15100L to 15000, 20100L to 20000), invocations)
+    }
+
+    companion object {
+        private const val MIN_WAIT_MS = 100L
+        private const val MAX_WAIT_MS = 800L
+    }
+}
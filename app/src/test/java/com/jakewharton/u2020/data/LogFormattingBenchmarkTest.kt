@@ -0,0 +1,49 @@
+package com.jakewharton.u2020.data
+
+import android.util.Log
+import org.junit.Assume.assumeTrue
+import org.junit.Before
+import org.junit.Test
+import java.lang.management.ManagementFactory
+
+/**
+ * Compares the CPU time per log call of the eager message formatting with the deferred one. Skipped
+ * by default as the result depends on the machine, run with `./gradlew test -Pbenchmark`
+ */
+class LogFormattingBenchmarkTest {
+    private val threadMXBean = ManagementFactory.getThreadMXBean()
+
+    @Before
+    fun setUp() {
+        assumeTrue(java.lang.Boolean.getBoolean("benchmark"))
+    }
+
+    @Test
+    fun `Benchmark eager and deferred formatting`() {
+        val buffer = LogRingBuffer(10000)
+        val eager = measure {
+            buffer.write(it.toLong(), Log.DEBUG, TAG, String.format(TEMPLATE, it, "com.example.app", true))
+        }
+        val deferred = measure {
+            buffer.write(it.toLong(), Log.DEBUG, TAG, TEMPLATE,
+                    LumberYard.captureArguments(arrayOf(it, "com.example.app", true)))
+        }
+        println("eager: $eager ns per call, deferred: $deferred ns per call")
+    }
+
+    /**
+     * Measure the average thread CPU time of the action after the warm up
+     */
+    private inline fun measure(action: (Int) -> Unit): Long {
+        for (i in 0 until ITERATIONS) action(i)
+        val start = threadMXBean.currentThreadCpuTime
+        for (i in 0 until ITERATIONS) action(i)
+        return (threadMXBean.currentThreadCpuTime - start) / ITERATIONS
+    }
+
+    companion object {
+        private const val TAG = "Benchmark"
+        private const val TEMPLATE = "onNotificationPosted: id=%1\$d, package=%2\$s, ongoing=%3\$b"
+        private const val ITERATIONS = 100_000
+    }
+}
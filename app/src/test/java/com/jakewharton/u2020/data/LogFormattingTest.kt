@@ -0,0 +1,83 @@
+package com.jakewharton.u2020.data
+
+import android.app.Application
+import android.util.Log
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.mockito.Mockito.*
+import timber.log.Timber
+
+class LogFormattingTest {
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private lateinit var tree: Timber.Tree
+    private lateinit var lumberYard: LumberYard
+
+    @Before
+    fun setUp() {
+        val app = mock(Application::class.java)
+        `when`(app.filesDir).thenReturn(folder.newFolder())
+        lumberYard = LumberYard(app)
+        tree = lumberYard.tree()
+        Timber.plant(tree)
+    }
+
+    @After
+    fun tearDown() {
+        Timber.uproot(tree)
+    }
+
+    @Test
+    fun `Test message is formatted only when read`() {
+        Timber.d("id=%1\$d, package=%2\$s", 1, "com.example.app")
+        val entry = lumberYard.bufferedLogs().single()
+        assertEquals("id=%1\$d, package=%2\$s", entry.template)
+        assertArrayEquals(arrayOf<Any?>(1, "com.example.app"), entry.args)
+        assertEquals("id=1, package=com.example.app", entry.message)
+    }
+
+    @Test
+    fun `Test mutable arguments are captured at log time`() {
+        val builder = StringBuilder("before")
+        Timber.d("value %s", builder)
+        builder.append(" changed")
+        assertEquals("value before", lumberYard.bufferedLogs().single().message)
+    }
+
+    @Test
+    fun `Test log call from argument toString doesn't affect outer call`() {
+        val nested = object {
+            override fun toString(): String {
+                Timber.tag("Nested").i("nested %s", "call")
+                return "outer argument"
+            }
+        }
+        Timber.d("outer %s", nested)
+        val entries = lumberYard.bufferedLogs()
+        assertEquals(listOf("nested call", "outer outer argument"), entries.map { it.message })
+        assertEquals(listOf(Log.INFO, Log.DEBUG), entries.map { it.level })
+    }
+
+    @Test
+    fun `Test call without arguments doesn't use previous call arguments`() {
+        Timber.d("value %d", 1)
+        Timber.d("literal %d")
+        val entry = lumberYard.bufferedLogs().last()
+        assertEquals("literal %d", entry.message)
+        assertNull(entry.args)
+    }
+
+    @Test
+    fun `Test message with throwable is formatted right away`() {
+        Timber.e(IllegalStateException("failure"), "error %d", 1)
+        val entry = lumberYard.bufferedLogs().single()
+        assertNull(entry.args)
+        assertTrue(entry.message.startsWith("error 1\n"))
+        assertTrue(entry.message.contains("IllegalStateException: failure"))
+    }
+}
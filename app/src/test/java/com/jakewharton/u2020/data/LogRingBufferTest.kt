@@ -0,0 +1,48 @@
+package com.jakewharton.u2020.data
+
+import android.util.Log
+import org.junit.Assert.*
+import org.junit.Test
+import kotlin.concurrent.thread
+
+class LogRingBufferTest {
+    @Test
+    fun `Test records are read back in order`() {
+        val buffer = LogRingBuffer(4)
+        buffer.write(1, Log.DEBUG, "tag", "first")
+        buffer.write(2, Log.WARN, "other", "second")
+        assertEquals(2, buffer.sequence)
+        assertEquals(0, buffer.oldestSequence)
+        assertEquals(LumberYard.Entry(1, Log.DEBUG, "tag", "first"), buffer.read(0))
+        assertEquals(LumberYard.Entry(2, Log.WARN, "other", "second"), buffer.read(1))
+        assertNull(buffer.read(2))
+        assertFalse(buffer.isPending(2))
+    }
+
+    @Test
+    fun `Test oldest records are overwritten`() {
+        val buffer = LogRingBuffer(4)
+        for (i in 0 until 6) {
+            buffer.write(i.toLong(), Log.INFO, "tag", "message $i")
+        }
+        assertEquals(2, buffer.oldestSequence)
+        assertNull(buffer.read(1))
+        assertFalse(buffer.isPending(1))
+        assertEquals("message 2", buffer.read(2)?.message)
+        assertEquals("message 5", buffer.read(5)?.message)
+    }
+
+    @Test
+    fun `Test concurrent writers do not lose records`() {
+        val buffer = LogRingBuffer(40_000)
+        (0 until 4).map { t ->
+            thread {
+                for (i in 0 until 10_000) {
+                    buffer.write(i.toLong(), Log.DEBUG, "tag$t", "$t:$i")
+                }
+            }
+        }.forEach { it.join() }
+        val messages = (0L until buffer.sequence).mapNotNull { buffer.read(it)?.message }.toSet()
+        assertEquals(40_000, messages.size)
+    }
+}
@@ -0,0 +1,81 @@
+package com.jakewharton.u2020.data
+
+import android.util.Log
+import org.junit.Assert.*
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.io.RandomAccessFile
+
+class LogSegmentStoreTest {
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private fun readAll(store: LogSegmentStore) = mutableListOf<LumberYard.Entry>().apply { store.forEach { add(it) } }
+
+    @Test
+    fun `Test entries survive reopening`() {
+        val directory = folder.newFolder()
+        LogSegmentStore(directory, 1024, 4).apply {
+            write(LumberYard.Entry(1, Log.DEBUG, "tag", "first"))
+            write(LumberYard.Entry(2, Log.ERROR, "тег", "второй"))
+        }
+        val store = LogSegmentStore(directory, 1024, 4)
+        store.write(LumberYard.Entry(3, Log.INFO, "tag", "third"))
+        assertEquals(listOf(
+                LumberYard.Entry(1, Log.DEBUG, "tag", "first"),
+                LumberYard.Entry(2, Log.ERROR, "тег", "второй"),
+                LumberYard.Entry(3, Log.INFO, "tag", "third")), readAll(store))
+    }
+
+    @Test
+    fun `Test oldest segments are evicted`() {
+        val directory = folder.newFolder()
+        val store = LogSegmentStore(directory, 128, 2)
+        for (i in 0 until 100) {
+            store.write(LumberYard.Entry(i.toLong(), Log.DEBUG, "tag", "message $i"))
+        }
+        assertEquals(2, directory.listFiles()!!.size)
+        val entries = readAll(store)
+        assertTrue(entries.size in 1 until 100)
+        assertEquals("message 99", entries.last().message)
+        assertEquals((entries.first().timeMillis..99L).toList(), entries.map { it.timeMillis })
+    }
+
+    @Test
+    fun `Test reading stops at first corrupted record`() {
+        // negative tag length, huge and negative template length, unknown argument type and
+        // argument count above the record size in the second record
+        for ((offset, bytes) in listOf(
+                4 to byteArrayOf(-1, -1),
+                18 to byteArrayOf(127, -1, -1, -1),
+                18 to byteArrayOf(-1, -1, -1, -1),
+                32 to byteArrayOf(100),
+                31 to byteArrayOf(100))) {
+            val directory = folder.newFolder()
+            LogSegmentStore(directory, 1024, 4).apply {
+                write(LumberYard.Entry(1, Log.DEBUG, "tag", "first"))
+                write(LumberYard.Entry(2, Log.DEBUG, "tag", "second %d", arrayOf(2)))
+                write(LumberYard.Entry(3, Log.DEBUG, "tag", "third"))
+            }
+            corrupt(directory.listFiles()!!.single(), offset, bytes)
+            val store = LogSegmentStore(directory, 1024, 4)
+            assertEquals(listOf("first"), readAll(store).map { it.message })
+            // the following records overwrite the corrupted one
+            store.write(LumberYard.Entry(4, Log.DEBUG, "tag", "fourth"))
+            assertEquals(listOf("first", "fourth"), readAll(store).map { it.message })
+        }
+    }
+
+    /**
+     * Overwrite the bytes at the offset in the second record of the segment file
+     */
+    private fun corrupt(file: File, offset: Int, bytes: ByteArray) {
+        RandomAccessFile(file, "rw").use {
+            val second = Int.SIZE_BYTES + it.readInt()
+            it.seek((second + offset).toLong())
+            it.write(bytes)
+        }
+    }
+}
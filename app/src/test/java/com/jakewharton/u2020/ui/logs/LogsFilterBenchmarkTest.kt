@@ -0,0 +1,40 @@
+package com.jakewharton.u2020.ui.logs
+
+import android.util.Log
+import com.jakewharton.u2020.data.LumberYard
+import org.junit.Assume.assumeTrue
+import org.junit.Before
+import org.junit.Test
+
+/**
+ * Measures the filtering of the full logs buffer. Skipped by default as the result depends on the
+ * machine, run with `./gradlew test -Pbenchmark`
+ */
+class LogsFilterBenchmarkTest {
+    @Before
+    fun setUp() {
+        assumeTrue(java.lang.Boolean.getBoolean("benchmark"))
+    }
+
+    @Test
+    fun `Benchmark filtering full buffer`() {
+        val filter = LogsFilter(LumberYard.BUFFER_SIZE)
+        filter.add(List(LumberYard.BUFFER_SIZE) {
+            LumberYard.Entry(it.toLong(), Log.DEBUG, "Tag${it % 10}",
+                    "onNotificationPosted: package com.example.app$it, notification ${it * 31 % 977} posted")
+        })
+        val queries = listOf("e", "co", "app42", "notification 97", "com.example.app9999", "missing", "/app4.*posted$/")
+        // warm up to measure the compiled code
+        repeat(5) { for (query in queries) filter.filter(query) }
+        for (query in queries) {
+            // the best of several runs to not be affected by the other processes
+            val time = (0 until 5).map {
+                filter.filter("")
+                val start = System.nanoTime()
+                filter.filter(query)
+                System.nanoTime() - start
+            }.minOrNull()!!
+            println("$query: ${time / 1000} us")
+        }
+    }
+}
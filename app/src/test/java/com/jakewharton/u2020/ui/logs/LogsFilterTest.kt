@@ -0,0 +1,83 @@
+package com.jakewharton.u2020.ui.logs
+
+import android.util.Log
+import com.jakewharton.u2020.data.LumberYard
+import org.junit.Assert.*
+import org.junit.Test
+
+class LogsFilterTest {
+    private fun entry(i: Int, message: String) = LumberYard.Entry(i.toLong(), Log.DEBUG, "Tag${i % 10}", message)
+
+    private fun LogsFilter.messages(query: String) = filter(query).map { it.message }
+
+    @Test
+    fun `Test plain query matches substrings`() {
+        val filter = LogsFilter(10)
+        filter.add(listOf(entry(0, "Telegram posted"), entry(1, "file.txt saved"), entry(2, "fileXtxt saved")))
+        assertEquals(listOf("Telegram posted"), filter.messages("eg"))
+        assertEquals(listOf("Telegram posted"), filter.messages("egr"))
+        assertEquals(listOf("Telegram posted"), filter.messages("EGRAM POS"))
+        // the dot is not a regular expression
+        assertEquals(listOf("file.txt saved"), filter.messages("file.txt"))
+        assertEquals(listOf<String>(), filter.messages("saved file"))
+        assertEquals(3, filter.filter("").size)
+    }
+
+    @Test
+    fun `Test query surrounded with slashes is regex`() {
+        val filter = LogsFilter(10)
+        filter.add(listOf(entry(0, "Telegram posted"), entry(1, "file.txt saved"), entry(2, "fileXtxt saved")))
+        assertEquals(listOf("file.txt saved", "fileXtxt saved"), filter.messages("/file.txt/"))
+        assertEquals(listOf("Telegram posted"), filter.messages("/GRAM\\s+P/"))
+        // invalid pattern matches nothing
+        assertEquals(listOf<String>(), filter.messages("/(/"))
+    }
+
+    @Test
+    fun `Test new entries are matched against current query`() {
+        val filter = LogsFilter(10)
+        filter.add(listOf(entry(0, "first match"), entry(1, "other")))
+        assertEquals(listOf("first match"), filter.messages("match"))
+        assertEquals(listOf("second match"), filter.add(listOf(entry(2, "second match"), entry(3, "other"))).map { it.message })
+        assertEquals(listOf("first match", "second match"), filter.messages("match"))
+    }
+
+    @Test
+    fun `Test oldest entries are evicted`() {
+        val filter = LogsFilter(3)
+        filter.add(List(5) { entry(it, "match $it") })
+        assertEquals(listOf("match 2", "match 3", "match 4"), filter.messages(""))
+        assertEquals(listOf<String>(), filter.messages("match 1"))
+        assertEquals(listOf("match 2", "match 3", "match 4"), filter.messages("match"))
+        // the current result is evicted together with the entries
+        filter.add(List(2) { entry(5 + it, "match ${5 + it}") })
+        assertEquals(listOf("match 4", "match 5", "match 6"), filter.messages("match "))
+        assertEquals(listOf("match 5"), filter.messages("match 5"))
+    }
+
+    @Test
+    fun `Test regex is matched against each field`() {
+        val filter = LogsFilter(10)
+        filter.add(listOf(entry(0, "Telegram posted"), entry(1, "file.txt saved"), entry(11, "posted file")))
+        assertEquals(listOf("file.txt saved"), filter.messages("/^file/"))
+        assertEquals(listOf("Telegram posted"), filter.messages("/posted$/"))
+        assertEquals(listOf("file.txt saved", "posted file"), filter.messages("/^tag1$/"))
+        // the pattern doesn't span the fields
+        assertEquals(listOf<String>(), filter.messages("/tag1.*file/"))
+    }
+
+    @Test
+    fun `Test extended query verifies only previous result`() {
+        val filter = LogsFilter(10)
+        filter.add(List(10) { entry(it, if (it % 3 == 0) "match $it" else "other $it") })
+        assertEquals(4, filter.filter("m").size)
+        assertEquals(10, filter.verifiedCount)
+        assertEquals(4, filter.filter("ma").size)
+        assertEquals(4, filter.verifiedCount)
+        assertEquals(listOf("match 3"), filter.messages("match 3"))
+        assertTrue(filter.verifiedCount <= 4)
+        // the query which is not an extension is verified against the index candidates
+        assertEquals(listOf("other 5"), filter.messages("other 5"))
+        assertEquals(1, filter.verifiedCount)
+    }
+}
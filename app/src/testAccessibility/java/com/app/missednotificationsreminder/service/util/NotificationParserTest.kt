@@ -0,0 +1,37 @@
+package com.app.missednotificationsreminder.service.util
+
+import org.junit.Assert.*
+import org.junit.Test
+
+class NotificationParserTest {
+    private fun key(`when`: Long = WHEN, number: Int = 0, title: CharSequence? = "Title", text: CharSequence? = "Text",
+                    tickerText: CharSequence? = null) =
+            NotificationParser.TitleKey().set(PACKAGE_NAME, `when`, number, title, text, tickerText)
+
+    @Test
+    fun `Test same notification has same title key`() {
+        assertEquals(key(), key())
+        assertEquals(key().hashCode(), key().hashCode())
+        // spanned and plain text of the same characters are the same content
+        assertEquals(key(text = StringBuilder("Text")), key())
+    }
+
+    @Test
+    fun `Test notification updated with same time has another title key`() {
+        assertNotEquals(key(), key(title = "Other title"))
+        assertNotEquals(key(), key(text = "New message"))
+        assertNotEquals(key(), key(number = 2))
+        assertNotEquals(key(tickerText = "First"), key(tickerText = "Second"))
+        assertNotEquals(key(), key(`when` = WHEN + 1))
+    }
+
+    @Test
+    fun `Test title key of other package differs`() {
+        assertNotEquals(key(), NotificationParser.TitleKey().set("com.example.other", WHEN, 0, "Title", "Text", null))
+    }
+
+    companion object {
+        private const val PACKAGE_NAME = "com.example"
+        private const val WHEN = 1_600_000_000_000L
+    }
+}